@@ -0,0 +1,35 @@
+import json
+import sys
+
+# compare two JMH result files (-rf json), e.g.:
+#   python3 compare.py results/base.json results/new.json [threshold]
+# exits with 1 if any benchmark is slower than threshold (default 0.10)
+
+def load(path):
+    res = {}
+    for r in json.load(open(path)):
+        params = ",".join("%s=%s" % kv for kv in sorted(r.get("params", {}).items()))
+        res[(r["benchmark"].split(".")[-2] + "." + r["benchmark"].split(".")[-1], params)] = r
+    return res
+
+base = load(sys.argv[1])
+new = load(sys.argv[2])
+threshold = float(sys.argv[3]) if len(sys.argv) > 3 else 0.10
+
+regressions = 0
+for key in sorted(set(base) & set(new)):
+    b, n = base[key], new[key]
+    bs, ns = b["primaryMetric"]["score"], n["primaryMetric"]["score"]
+    # throughput: higher is better, times: lower is better
+    change = (ns - bs) / bs if b["mode"] == "thrpt" else (bs - ns) / bs
+    mark = ""
+    if change < -threshold:
+        mark = "  REGRESSION"
+        regressions += 1
+    print("%-30s %-40s %12.3f %12.3f %-8s %+6.1f%%%s" % (key[0], key[1], bs, ns,
+          b["primaryMetric"]["scoreUnit"], 100 * change, mark))
+
+for key in sorted(set(base) ^ set(new)):
+    print("%-30s %-40s only in %s" % (key[0], key[1], sys.argv[1] if key in base else sys.argv[2]))
+
+sys.exit(1 if regressions else 0)
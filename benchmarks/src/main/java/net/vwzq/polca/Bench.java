@@ -0,0 +1,35 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.cli.DefaultParser;
+
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+// Shared setup of the benchmarks, configs are built from command line options
+// exactly as Polca does
+class Bench {
+
+	public static Config config(String... args) throws Exception {
+		return new Config(new DefaultParser().parse(Polca.buildOptions(), args));
+	}
+
+	// fixed seed, so every run measures the same words
+	public static List<Word<String>> words(Alphabet<String> alphabet, int count, int len) {
+		Random random = new Random(1);
+		List<Word<String>> words = new ArrayList<Word<String>>(count);
+		for (int n = 0; n < count; n++) {
+			WordBuilder<String> wb = new WordBuilder<>(len);
+			for (int i = 0; i < len; i++) {
+				wb.add(alphabet.getSymbol(random.nextInt(alphabet.size())));
+			}
+			words.add(wb.toWord());
+		}
+		return words;
+	}
+
+}
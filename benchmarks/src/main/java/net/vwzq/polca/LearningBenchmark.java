@@ -0,0 +1,42 @@
+package net.vwzq.polca;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.DefaultParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// End to end learning time of a fixed grid, same seed on every run
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LearningBenchmark {
+
+	@Param({ "lru", "fifo", "plru", "srriphp" })
+	public String policy;
+
+	@Param({ "kv", "ttt", "lstar" })
+	public String learner;
+
+	@Param({ "4" })
+	public String ways;
+
+	@Benchmark
+	public int learn() throws Exception {
+		Polca polca = new Polca(new DefaultParser().parse(Polca.buildOptions(),
+				new String[] { "-p", this.policy, "-l", this.learner, "-w", this.ways, "-seed", "1", "-s" }));
+		return polca.learn().size();
+	}
+
+}
@@ -0,0 +1,99 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.filter.cache.mealy.MealyCaches;
+import de.learnlib.filter.statistic.oracle.MealyCounterOracle;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+
+// Batches of membership queries through the same layers as Polca.activeLearning:
+// counter -> DAG cache -> counter -> hit filter -> CacheSULOracle.
+// 'cold' starts every batch with an empty cache, 'warm' answers it from cache.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OracleBenchmark {
+
+	private static final int BATCH = 1024;
+
+	@Param({ "lru", "plru" })
+	public String policy;
+
+	@Param({ "4", "8" })
+	public String ways;
+
+	@Param({ "cold", "warm" })
+	public String cache;
+
+	private Config config;
+	private Alphabet<String> alphabet;
+	private CacheSUL sul;
+	private List<Word<String>> words;
+	private MealyMembershipOracle<String, String> oracle;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		this.config = Bench.config("-p", this.policy, "-w", this.ways);
+		this.alphabet = Polca.buildAlphabet(this.config.ways);
+		this.sul = new CacheSUL(this.config, this.alphabet);
+		this.words = Bench.words(this.alphabet, BATCH, 24);
+		this.oracle = pipeline();
+		if (this.cache.equals("warm")) {
+			this.oracle.processQueries(queries());
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void fresh() {
+		if (this.cache.equals("cold")) {
+			this.oracle = pipeline();
+		}
+	}
+
+	private MealyMembershipOracle<String, String> pipeline() {
+		CacheSULOracle sulOracle = new CacheSULOracle(this.sul, this.config, "mq", null, 0, new Random(1));
+		MealyCounterOracle<String, String> counter = new MealyCounterOracle<>(new HitFilterOracle(sulOracle), "membership queries");
+		MealyMembershipOracle<String, String> cached = MealyCaches.createDAGCache(this.alphabet, counter);
+		return new MealyCounterOracle<>(cached, "membership queries hit cache");
+	}
+
+	private List<DefaultQuery<String, Word<String>>> queries() {
+		List<DefaultQuery<String, Word<String>>> queries = new ArrayList<>(BATCH);
+		for (Word<String> w : this.words) {
+			queries.add(new DefaultQuery<>(w.prefix(8), w.subWord(8)));
+		}
+		return queries;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public List<DefaultQuery<String, Word<String>>> batch() {
+		List<DefaultQuery<String, Word<String>>> queries = queries();
+		this.oracle.processQueries(queries);
+		return queries;
+	}
+
+}
@@ -0,0 +1,78 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Raw simulator throughput: single accesses over a random block stream, and
+// locating the evicted block of a word (-locate linear|group)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolicyBenchmark {
+
+	private static final int STREAM = 4096;
+
+	@Param({ "lru", "plru", "fifo", "mru", "lip", "plip", "srriphp", "srripfp", "new1", "new2" })
+	public String policy;
+
+	@Param({ "4", "8", "16" })
+	public String ways;
+
+	@Param({ "linear", "group" })
+	public String locate;
+
+	private CachePolicy cache;
+	private String[] stream;
+	private ArrayList<String> word, candidates;
+
+	@Setup
+	public void setup() throws Exception {
+		Config config = Bench.config("-p", this.policy, "-w", this.ways, "-locate", this.locate);
+		this.cache = (CachePolicy) CacheSUL.instantiateCache(config);
+		int w = config.ways;
+		// twice as many blocks as ways, so about half of the accesses miss
+		Random random = new Random(1);
+		this.stream = new String[STREAM];
+		for (int i = 0; i < STREAM; i++) {
+			this.stream[i] = "b" + random.nextInt(2 * w);
+		}
+		// fill with the initial blocks, then miss once
+		this.candidates = new ArrayList<String>(Arrays.asList(this.cache.alpha));
+		this.word = new ArrayList<String>(this.candidates);
+		this.word.add("x");
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STREAM)
+	public int access() {
+		int misses = 0;
+		for (String block : this.stream) {
+			misses += this.cache.access(block);
+		}
+		return misses;
+	}
+
+	@Benchmark
+	public String locateMiss() {
+		return this.cache.locateMiss(this.word, this.candidates);
+	}
+
+}
@@ -0,0 +1,82 @@
+package net.vwzq.polca;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+
+// Per symbol cost of the abstract SUL: CacheSUL.step alone, and complete
+// membership queries through CacheSULOracle.answerQuery (reset + prefix + suffix)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SULBenchmark {
+
+	private static final int WORDS = 256;
+	private static final int LENGTH = 32;
+
+	@Param({ "lru", "plru", "srriphp" })
+	public String policy;
+
+	@Param({ "4", "8" })
+	public String ways;
+
+	private Config config;
+	private CacheSUL sul;
+	private List<Word<String>> words;
+	private Random random;
+
+	@Setup
+	public void setup() throws Exception {
+		this.config = Bench.config("-p", this.policy, "-w", this.ways);
+		Alphabet<String> alphabet = Polca.buildAlphabet(this.config.ways);
+		this.sul = new CacheSUL(this.config, alphabet);
+		this.words = Bench.words(alphabet, WORDS, LENGTH);
+		this.random = new Random(1);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(WORDS * LENGTH)
+	public int step() {
+		int n = 0;
+		for (Word<String> w : this.words) {
+			this.sul.pre();
+			for (String sym : w) {
+				n += this.sul.step(sym).length();
+			}
+		}
+		return n;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(WORDS * LENGTH)
+	public int answerQuery() {
+		int n = 0;
+		for (Word<String> w : this.words) {
+			// half prefix, half suffix
+			Word<String> out = CacheSULOracle.answerQuery(this.sul, w.prefix(LENGTH / 2), w.suffix(LENGTH / 2),
+					this.config.ways, null, 0, this.random);
+			n += out.length();
+		}
+		return n;
+	}
+
+}
@@ -0,0 +1,130 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.api.query.Query;
+import net.automatalib.words.Word;
+
+// Repeats every query until one answer leads the others by a margin large enough
+// to reach the target confidence. The margin is derived from the disagreement
+// rate. It is estimated online from the first two answers of every query, taken
+// whatever the query's stopping point, starting from a prior whose margin is
+// half of the maximum repetitions.
+class AdaptiveRepeatOracle implements MealyMembershipOracle<String, String> {
+
+	static class Votes {
+		public final Query<String, Word<String>> query;
+		public final Map<Word<String>, Integer> votes = new HashMap<Word<String>, Integer>();
+		public int total = 0;
+		public Word<String> leader;
+		public int first = 0, second = 0;
+		public Votes(Query<String, Word<String>> query) {
+			this.query = query;
+		}
+
+		public void add(Word<String> answer) {
+			this.votes.merge(answer, 1, Integer::sum);
+			this.total++;
+			this.leader = null;
+			this.first = this.second = 0;
+			for (Map.Entry<Word<String>, Integer> e : this.votes.entrySet()) {
+				if (e.getValue() > this.first) {
+					this.second = this.first;
+					this.first = e.getValue();
+					this.leader = e.getKey();
+				} else if (e.getValue() > this.second) {
+					this.second = e.getValue();
+				}
+			}
+		}
+	}
+
+	private static final double PRIOR_WEIGHT = 20;
+
+	private final MealyMembershipOracle<String, String> delegate;
+	private final double confidence;
+	private final int minReps, maxReps;
+	private final double prior;
+	private long samples, disagreements;
+
+	public AdaptiveRepeatOracle(MealyMembershipOracle<String, String> delegate, double confidence, int minReps, int maxReps) {
+		this.delegate = delegate;
+		this.confidence = confidence;
+		this.minReps = Math.max(1, minReps);
+		this.maxReps = Math.max(this.minReps, maxReps);
+		// (p/(1-p))^(maxReps/2) = 1-confidence
+		double ratio = Math.pow(1 - confidence, 1.0 / Math.max(1, this.maxReps / 2));
+		this.prior = ratio / (1 + ratio);
+		Metrics.get().gauge("repeat.noise_estimate", this::noiseEstimate);
+	}
+
+	// probability that an answer is wrong: two answers differ with q = 2p(1-p),
+	// the prior counts as PRIOR_WEIGHT pairs
+	public synchronized double noiseEstimate() {
+		double q = (this.disagreements + 2 * this.prior * (1 - this.prior) * PRIOR_WEIGHT) / (this.samples + PRIOR_WEIGHT);
+		return Math.min(0.45, (1 - Math.sqrt(Math.max(0, 1 - 2 * q))) / 2);
+	}
+
+	// lead needed so that a wrong answer wins with probability below 1-confidence,
+	// a wrong answer leading by k has probability ~ (p/(1-p))^k
+	private int margin() {
+		double p = noiseEstimate();
+		return (int) Math.max(1, Math.ceil(Math.log(1 - this.confidence) / Math.log(p / (1 - p))));
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
+		List<Votes> pending = new ArrayList<Votes>(queries.size());
+		for (Query<String, Word<String>> q : queries) {
+			pending.add(new Votes(q));
+		}
+
+		while (!pending.isEmpty()) {
+			// one repetition of every unresolved query per batch
+			List<DefaultQuery<String, Word<String>>> batch = new ArrayList<DefaultQuery<String, Word<String>>>(pending.size());
+			for (Votes v : pending) {
+				batch.add(new DefaultQuery<String, Word<String>>(v.query.getPrefix(), v.query.getSuffix(), null));
+			}
+			this.delegate.processQueries(batch);
+
+			int disagree = 0, compared = 0;
+			for (int i = 0; i < batch.size(); i++) {
+				Votes v = pending.get(i);
+				Word<String> answer = batch.get(i).getOutput();
+				// the second answer against the first
+				if (v.total == 1) {
+					compared++;
+					if (!answer.equals(v.leader)) disagree++;
+				}
+				v.add(answer);
+			}
+			record(batch.size(), compared, disagree);
+
+			int margin = margin();
+			List<Votes> next = new ArrayList<Votes>();
+			for (Votes v : pending) {
+				if (v.total >= this.minReps && (v.first - v.second >= margin || v.total >= this.maxReps)) {
+					if (v.total < this.maxReps) Metrics.get().counter("repeat.early_stops").increment();
+					v.query.answer(v.leader);
+				} else {
+					next.add(v);
+				}
+			}
+			pending = next;
+		}
+	}
+
+	private synchronized void record(int answers, int compared, int disagree) {
+		Metrics.get().counter("repeat.samples").add(answers);
+		Metrics.get().counter("repeat.disagreements").add(disagree);
+		this.samples += compared;
+		this.disagreements += disagree;
+	}
+
+}
@@ -0,0 +1,199 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.api.query.Query;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+// Membership cache with a bound on the number of stored symbols.
+// Words are kept in a trie, so any prefix of a cached word is also answered.
+// Words asked by the learner (observation table, discrimination tree) are
+// kept as long as possible, words asked by the equivalence oracle are the
+// first ones to be evicted.
+public class BoundedCacheOracle implements MealyMembershipOracle<String, String> {
+
+	enum Kind { TABLE, TEST };
+
+	static class Node {
+		public String output;
+		public int refs;
+		public Map<String, Node> children;
+		public Node(String output) {
+			this.output = output;
+			this.refs = 0;
+			this.children = new HashMap<String, Node>();
+		}
+	}
+
+	private final MealyMembershipOracle<String, String> delegate;
+	private final long budget;
+	private final Node root;
+	// access-ordered, eldest entry is evicted first
+	private final LinkedHashMap<Word<String>, Kind> table;
+	private final LinkedHashMap<Word<String>, Kind> tests;
+	private long size;
+	private long hits, misses, evictions;
+
+	// budget <= 0 means unbounded
+	public BoundedCacheOracle(MealyMembershipOracle<String, String> delegate, long budget) {
+		this.delegate = delegate;
+		this.budget = budget;
+		this.root = new Node(null);
+		this.table = new LinkedHashMap<Word<String>, Kind>(16, 0.75f, true);
+		this.tests = new LinkedHashMap<Word<String>, Kind>(16, 0.75f, true);
+		this.size = 0;
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
+		processQueries(queries, Kind.TABLE);
+	}
+
+	// view used by equivalence oracles, its words are evicted first
+	public MealyMembershipOracle<String, String> asTestOracle() {
+		return queries -> processQueries(queries, Kind.TEST);
+	}
+
+	private void processQueries(Collection<? extends Query<String, Word<String>>> queries, Kind kind) {
+		Map<Word<String>, List<Query<String, Word<String>>>> pending = new LinkedHashMap<>();
+		synchronized (this) {
+			for (Query<String, Word<String>> q : queries) {
+				Word<String> input = q.getInput();
+				Word<String> output = lookup(input);
+				if (output != null) {
+					hits++;
+					if (kind == Kind.TABLE) insert(input, output, kind);
+					q.answer(output.suffix(q.getSuffix().length()));
+				} else {
+					misses++;
+					pending.computeIfAbsent(input, k -> new ArrayList<>()).add(q);
+				}
+			}
+		}
+		if (pending.isEmpty()) return;
+		// query the delegate outside the lock, so concurrent learners can share it
+		List<DefaultQuery<String, Word<String>>> batch = new ArrayList<>(pending.size());
+		for (Word<String> input : pending.keySet()) {
+			batch.add(new DefaultQuery<String, Word<String>>(input));
+		}
+		this.delegate.processQueries(batch);
+		synchronized (this) {
+			for (DefaultQuery<String, Word<String>> dq : batch) {
+				Word<String> output = dq.getOutput();
+				insert(dq.getInput(), output, kind);
+				for (Query<String, Word<String>> q : pending.get(dq.getInput())) {
+					q.answer(output.suffix(q.getSuffix().length()));
+				}
+			}
+		}
+	}
+
+	private Word<String> lookup(Word<String> input) {
+		Node node = this.root;
+		WordBuilder<String> wb = new WordBuilder<>(input.length());
+		for (String sym : input) {
+			node = node.children.get(sym);
+			if (node == null) return null;
+			wb.add(node.output);
+		}
+		return wb.toWord();
+	}
+
+	private void insert(Word<String> input, Word<String> output, Kind kind) {
+		Kind old = this.table.get(input);
+		if (old == null) old = this.tests.get(input);
+		if (old != null) {
+			// already stored, promote test words asked by the learner
+			if (old == Kind.TEST && kind == Kind.TABLE) {
+				this.tests.remove(input);
+				this.table.put(input, kind);
+			}
+			return;
+		}
+		Node node = this.root;
+		for (int i = 0; i < input.length(); i++) {
+			String sym = input.getSymbol(i);
+			Node next = node.children.get(sym);
+			if (next == null) {
+				next = new Node(output.getSymbol(i));
+				node.children.put(sym, next);
+				this.size++;
+			}
+			next.refs++;
+			node = next;
+		}
+		(kind == Kind.TABLE ? this.table : this.tests).put(input, kind);
+		evict(input);
+	}
+
+	// evict eldest words until we are under budget, never the last inserted one
+	private void evict(Word<String> last) {
+		while (this.budget > 0 && this.size > this.budget) {
+			Word<String> victim = eldest(this.tests, last);
+			if (victim == null) victim = eldest(this.table, last);
+			if (victim == null) return;
+			remove(victim);
+			this.evictions++;
+		}
+	}
+
+	private Word<String> eldest(LinkedHashMap<Word<String>, Kind> entries, Word<String> last) {
+		Iterator<Word<String>> it = entries.keySet().iterator();
+		while (it.hasNext()) {
+			Word<String> w = it.next();
+			if (!w.equals(last)) {
+				it.remove();
+				return w;
+			}
+		}
+		return null;
+	}
+
+	private void remove(Word<String> input) {
+		Node node = this.root;
+		for (int i = 0; i < input.length(); i++) {
+			Node next = node.children.get(input.getSymbol(i));
+			next.refs--;
+			if (next.refs == 0) {
+				// nobody else goes through here, drop rest of the path
+				node.children.remove(input.getSymbol(i));
+				this.size -= input.length() - i;
+				return;
+			}
+			node = next;
+		}
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+	public synchronized String getStatistics() {
+		long total = this.hits + this.misses;
+		double ratio = total == 0 ? 0 : (100.0 * this.hits) / total;
+		return String.format("cache hits: %d / %d (%.2f%%), evictions: %d, size: %d / %s", this.hits, total, ratio,
+				this.evictions, this.size, this.budget > 0 ? Long.toString(this.budget) : "unbounded");
+	}
+
+}
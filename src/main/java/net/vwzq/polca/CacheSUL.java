@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 import net.automatalib.words.WordBuilder;
 import de.learnlib.api.SUL;
 import net.automatalib.words.Alphabet;
@@ -20,8 +21,12 @@ public class CacheSUL implements SUL<String, String> {
 	private Cache cache;
 	private Config config;
 	private int numQueries;
+	private long numSteps;
 	private Map<Integer, String> intern;
 	private ArrayList<String> path;
+	// looked up once, step() is the hottest path
+	private final Metrics.Histogram stepTime, locateTime;
+	private final LongAdder resets;
 
 	public void reset() {
 		if (this.config.verbose) System.out.println("sul reset()");
@@ -34,31 +39,35 @@ public class CacheSUL implements SUL<String, String> {
 		}
 	}
 
-	public Cache instantiateCache(Config config) throws Exception {
+	public static Cache instantiateCache(Config config) throws Exception {
 		// Instantiate cache policy
-		switch (this.config.policy) {
+		switch (config.policy) {
 			case HW:
-				return new HW(this.config);
+				return new HW(config);
 			case SRRIPHP:
-				return new SRRIPHP(this.config);
+				return new SRRIPHP(config);
 			case SRRIPFP:
-				return new SRRIPFP(this.config);
+				return new SRRIPFP(config);
 			case MRU:
-				return new MRU(this.config);
+				return new MRU(config);
 			case PLRU:
-				return new PLRU(this.config);
+				return new PLRU(config);
 			case LRU:
-				return new LRU(this.config);
+				return new LRU(config);
 			case FIFO:
-				return new FIFO(this.config);
+				return new FIFO(config);
 			case LIP:
-				return new LIP(this.config);
+				return new LIP(config);
 			case PLIP:
-				return new PLIP(this.config);
+				return new PLIP(config);
 			case SKYL3:
-				return new SKYL3(this.config);
+				return new SKYL3(config);
 			case SKYL2:
-				return new SKYL2(this.config);
+				return new SKYL2(config);
+			case SKETCH:
+				return new SketchPolicy(config);
+			case AGE:
+				return new AgePolicy(config);
 			default:
 				return null;
 		}
@@ -70,6 +79,10 @@ public class CacheSUL implements SUL<String, String> {
 		this.abstractAlphabet = abstractAlphabet;
 		this.cache = instantiateCache(this.config);
 		this.numQueries = 0;
+		this.numSteps = 0;
+		this.stepTime = Metrics.get().histogram("sul.step");
+		this.locateTime = Metrics.get().histogram("sul.locate_miss");
+		this.resets = Metrics.get().counter("sul.resets");
 		this.reset();
 	}
 
@@ -77,6 +90,10 @@ public class CacheSUL implements SUL<String, String> {
 		return this.numQueries;
 	}
 
+	public long getNumSteps() {
+		return this.numSteps;
+	}
+
 	public Alphabet<String> getAlphabet() {
 		return this.abstractAlphabet;
 	}
@@ -105,7 +122,9 @@ public class CacheSUL implements SUL<String, String> {
 		String ret = "";
 		int index = -1;
 		ArrayList<String> candidates = new ArrayList<String>(this.intern.values());
+		long start = System.nanoTime();
 		String miss = this.cache.locateMiss(this.path, candidates); // return replaced element
+		this.locateTime.record(System.nanoTime() - start);
 		this.numQueries++;
 		if (miss != "") {
 			// Update intern mapping
@@ -133,6 +152,8 @@ public class CacheSUL implements SUL<String, String> {
 	public String step(String symbol, List<ArrayList<String>> translationCache) {
 		if (this.config.verbose) System.out.print("step: " + symbol + " path: " + this.path + " -> ");
 		String result = "";
+		long start = System.nanoTime();
+		this.numSteps++;
 		String input = mapInput(symbol);
 		this.path.add(input);
 		// no need to access hits now, wait til a miss
@@ -147,6 +168,7 @@ public class CacheSUL implements SUL<String, String> {
 				throw new SULException(new Throwable("Invalid response"));
 			}
 		}
+		this.stepTime.record(System.nanoTime() - start);
 		if (this.config.verbose) System.out.println(" / " + result);
 		// Add concrete input and abstract output into cache
 		if (translationCache != null) {
@@ -180,6 +202,7 @@ public class CacheSUL implements SUL<String, String> {
 
 	@Override
 	public void pre() {
+		this.resets.increment();
 		try {
 			this.reset();
 		} catch (Exception e) {
@@ -2,6 +2,7 @@ package net.vwzq.polca;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Random;
 import java.util.stream.IntStream;
 
@@ -20,6 +21,7 @@ public class CacheSULOracle implements MealyMembershipOracle<String, String> {
     private float probability;
 	private Config config;
     private Random random;
+	private TranslationTrie translations;
 
     public CacheSULOracle(CacheSUL sul, Config conf, String label, NoiseType noise, float probability, Random random) {
         this.sul = sul;
@@ -28,25 +30,31 @@ public class CacheSULOracle implements MealyMembershipOracle<String, String> {
 		this.noise = noise;
 		this.probability = probability;
         this.random = random;
+		this.translations = conf.no_translation_cache ? null : new TranslationTrie(conf.is_hw ? 2 : 1);
     }
 
     @Override
     public void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
 		synchronized (sul) {
-                processQueries(sul, queries, this.config, label, noise, probability, random);
+                processQueries(sul, queries, this.config, label, noise, probability, random, translations);
         }
     }
 
-    private static void processQueries(CacheSUL sul, Collection<? extends Query<String, Word<String>>> queries, Config config, String label, NoiseType noise, float probability, Random random) {
+    private static void processQueries(CacheSUL sul, Collection<? extends Query<String, Word<String>>> queries, Config config, String label, NoiseType noise, float probability, Random random, TranslationTrie translations) {
         for (Query<String, Word<String>> q : queries) {
 			if (config.verbose) System.out.println("(" + label + ") " + "processQuery: " + q);
-			Word<String> output = answerQuery(sul, q.getPrefix(), q.getSuffix(), config.ways, noise, probability, random);
+			Word<String> output = answerQuery(sul, q.getPrefix(), q.getSuffix(), config.ways, noise, probability, random, translations);
             q.answer(output);
         }
     }
 
     @NonNull
     public static Word<String> answerQuery(CacheSUL sul, Word<String> prefix, Word<String> suffix, int ways, NoiseType noise, float probability, Random random) {
+        return answerQuery(sul, prefix, suffix, ways, noise, probability, random, null);
+    }
+
+    @NonNull
+    public static Word<String> answerQuery(CacheSUL sul, Word<String> prefix, Word<String> suffix, int ways, NoiseType noise, float probability, Random random, TranslationTrie translations) {
         sul.pre();
         try {
             //Pre noise introduced
@@ -63,15 +71,32 @@ public class CacheSULOracle implements MealyMembershipOracle<String, String> {
                 }
             }
 
-            // Prefix: Execute symbols, don't record output
-            for (String sym : prefix) {
-                sul.step(sym);
-            }
-
-            // Suffix: Execute symbols, outputs constitute output word
             WordBuilder<String> wb = new WordBuilder<>(suffix.length());
-            for (String sym : suffix) {
-                wb.add(sul.step(sym));
+            if (translations != null) {
+                // Replay the translation of known prefixes, locate only new misses
+                Word<String> word = prefix.concat(suffix);
+                List<ArrayList<String>> translation = translations.lookup(word);
+                int known = translation.size();
+                Metrics.get().counter("sul.translation.reused").add(known);
+                Word<String> outputs = sul.cachedSteps(word.prefix(known), translation);
+                translation = new ArrayList<ArrayList<String>>(translation);
+                for (int i = known; i < word.length(); i++) {
+                    sul.step(word.getSymbol(i), translation);
+                }
+                translations.insert(word, translation, known);
+                for (int i = prefix.length(); i < word.length(); i++) {
+                    wb.add(i < known ? outputs.getSymbol(i) : translation.get(i).get(1));
+                }
+            } else {
+                // Prefix: Execute symbols, don't record output
+                for (String sym : prefix) {
+                    sul.step(sym);
+                }
+
+                // Suffix: Execute symbols, outputs constitute output word
+                for (String sym : suffix) {
+                    wb.add(sul.step(sym));
+                }
             }
 
             //Post noise introduced
@@ -0,0 +1,298 @@
+package net.vwzq.polca;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+
+import net.automatalib.automata.transducers.MealyMachine;
+import net.automatalib.serialization.dot.GraphDOT;
+
+// Serves learning jobs from a single JVM, so runs share class loading, the JIT,
+// the hardware proxy (started once) and its stored measurements:
+//   -serve 7777     one job per line on a localhost socket
+//   -serve spool/   one job per *.job file in a directory
+// A job is a regular command line, e.g. '-p lru -w 4 -l kv -seed 1'.
+// Socket answers, in the order the jobs were sent:
+//   start <id>
+//   model              followed by the DOT of the learnt model
+//   stats <json>       RunStats of the job
+//   error <message>
+//   end <id>
+// Spool jobs are claimed by renaming x.job to x.running, results are written
+// into x.dot and x.json, then the job is renamed to x.done (x.err on failure).
+// Simulated jobs run concurrently (-threads), 'hw' jobs one at a time.
+class Daemon {
+
+	// options selecting other modes than learning
+	private static final List<String> REJECTED = Arrays.asList("serve", "sweep", "sweep_out", "compare", "convert",
+			"identify", "sketch_from", "levels", "sets", "worker", "help");
+	private static final long POLL_MS = 500;
+
+	static class Result {
+		public int id;
+		public String model;
+		public RunStats stats;
+		public String error;
+	}
+
+	private final Options options;
+	private final ExecutorService pool;
+	private final ExecutorService hwPool;
+	private final AtomicInteger ids = new AtomicInteger();
+	private volatile boolean running = true;
+	private ServerSocket server;
+
+	public Daemon(Options options, int threads) {
+		this.options = options;
+		this.pool = Executors.newFixedThreadPool(threads);
+		this.hwPool = Executors.newSingleThreadExecutor();
+		// the proxy outlives jobs, restore regular settings once on exit
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> HW.Proxy.terminateAll()));
+	}
+
+	public void serve(String spec) throws Exception {
+		if (spec.matches("\\d+")) {
+			serveSocket(Integer.parseInt(spec));
+		} else {
+			serveSpool(new File(spec));
+		}
+	}
+
+	// 'a "b c"' -> [a, b c]
+	public static String[] split(String line) {
+		List<String> args = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder();
+		char quote = 0;
+		boolean token = false;
+		for (char c : line.toCharArray()) {
+			if (quote != 0) {
+				if (c == quote) quote = 0;
+				else sb.append(c);
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+				token = true;
+			} else if (Character.isWhitespace(c)) {
+				if (token) args.add(sb.toString());
+				sb.setLength(0);
+				token = false;
+			} else {
+				sb.append(c);
+				token = true;
+			}
+		}
+		if (token) args.add(sb.toString());
+		return args.toArray(new String[0]);
+	}
+
+	public CompletableFuture<Result> submit(String line) {
+		int id = this.ids.incrementAndGet();
+		String[] args = split(line);
+		Polca polca;
+		try {
+			List<String> list = new ArrayList<String>(Arrays.asList(args));
+			list.add("-s");
+			CommandLine cmd = new DefaultParser().parse(this.options, list.toArray(new String[0]));
+			for (String o : REJECTED) {
+				if (cmd.hasOption(o)) throw new Exception("option not supported by jobs: -" + o);
+			}
+			polca = new Polca(cmd);
+		} catch (Exception e) {
+			return CompletableFuture.completedFuture(failed(id, e));
+		}
+		// there is a single proxy
+		ExecutorService target = polca.getConfig().is_hw ? this.hwPool : this.pool;
+		// e.g. an Error thrown by a learner, the job still gets its answer
+		return CompletableFuture.supplyAsync(() -> runJob(id, args, polca), target)
+				.exceptionally(t -> failed(id, t.getCause() != null ? t.getCause() : t));
+	}
+
+	private static Result failed(int id, Throwable t) {
+		Result result = new Result();
+		result.id = id;
+		result.error = t.getMessage() != null ? t.getMessage() : t.toString();
+		return result;
+	}
+
+	private Result runJob(int id, String[] args, Polca polca) {
+		Result result = new Result();
+		result.id = id;
+		Config config = polca.getConfig();
+		try {
+			MealyMachine<?, String, ?, String> hyp = Metrics.run(polca::learn);
+			if (hyp == null) throw new Exception("no model learnt");
+			StringWriter dot = new StringWriter();
+			GraphDOT.write(hyp, Polca.buildAlphabet(config.ways), dot);
+			result.model = dot.toString();
+			if (!config.output_path.isEmpty()) {
+				ModelIO.write(hyp, Polca.buildAlphabet(config.ways), config.output_path);
+			}
+			if (config.sketch_path != null) {
+				try (PrintStream out = new PrintStream(config.sketch_path)) {
+					SketchWriter.write(hyp, Polca.buildAlphabet(config.ways), config.ways, config.sketch_template, out);
+				}
+			}
+		} catch (Exception e) {
+			result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+		}
+		result.stats = polca.getStats();
+		if (result.stats != null && result.error != null) result.stats.error = result.error;
+		Metrics.get().counter(result.error == null ? "daemon.jobs" : "daemon.failed").increment();
+		System.err.println("daemon: job " + id + " " + String.join(" ", args)
+				+ (result.error != null ? ": " + result.error : " done"));
+		return result;
+	}
+
+	private void serveSocket(int port) throws IOException {
+		ExecutorService clients = Executors.newCachedThreadPool();
+		try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			this.server = server;
+			System.err.println("daemon: listening on " + server.getLocalSocketAddress());
+			while (this.running) {
+				Socket socket = server.accept();
+				clients.submit(() -> handle(socket));
+			}
+		} catch (IOException e) {
+			if (this.running) throw e; // otherwise closed by 'shutdown'
+		} finally {
+			clients.shutdownNow();
+			shutdown();
+		}
+	}
+
+	// jobs of a connection run concurrently, answers keep the order of the jobs
+	private void handle(Socket socket) {
+		BlockingQueue<Future<Result>> queue = new LinkedBlockingQueue<Future<Result>>();
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				PrintWriter out = new PrintWriter(s.getOutputStream(), true)) {
+			Thread writer = new Thread(() -> {
+				try {
+					Future<Result> f;
+					while ((f = queue.take()) != POISON) {
+						Result r;
+						try {
+							r = f.get();
+						} catch (ExecutionException e) {
+							r = failed(0, e.getCause());
+						}
+						write(out, r);
+					}
+				} catch (InterruptedException e) {}
+			});
+			writer.start();
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				if (line.equals("shutdown")) {
+					this.running = false;
+					break;
+				}
+				queue.add(submit(line));
+			}
+			queue.add(POISON);
+			writer.join();
+		} catch (Exception e) {
+			System.err.println("daemon: " + e.getMessage());
+		}
+		if (!this.running) {
+			try {
+				this.server.close(); // wakes up accept()
+			} catch (IOException e) {}
+		}
+	}
+
+	private static final Future<Result> POISON = new CompletableFuture<Result>();
+
+	private static void write(PrintWriter out, Result r) {
+		out.println("start " + r.id);
+		if (r.model != null) {
+			out.println("model");
+			out.print(r.model);
+			if (!r.model.endsWith("\n")) out.println();
+		}
+		if (r.stats != null) out.println("stats " + r.stats.toJson());
+		if (r.error != null) out.println("error " + r.error.replace('\n', ' '));
+		out.println("end " + r.id);
+		out.flush();
+	}
+
+	private void serveSpool(File dir) throws Exception {
+		if (!dir.isDirectory()) {
+			throw new IOException("no spool directory: " + dir);
+		}
+		System.err.println("daemon: watching " + dir);
+		List<Future<?>> pending = new ArrayList<Future<?>>();
+		while (this.running) {
+			File[] jobs = dir.listFiles((d, name) -> name.endsWith(".job"));
+			if (jobs != null) {
+				Arrays.sort(jobs);
+				for (File job : jobs) {
+					String base = job.getPath().substring(0, job.getPath().length() - ".job".length());
+					File claimed = new File(base + ".running");
+					if (!job.renameTo(claimed)) continue; // taken by someone else
+					String line = String.join(" ", Files.readAllLines(claimed.toPath(), StandardCharsets.UTF_8));
+					pending.add(submit(line).thenAccept(r -> {
+						try {
+							finish(base, claimed, r);
+						} catch (IOException e) {
+							System.err.println("daemon: " + base + ": " + e.getMessage());
+						}
+					}));
+				}
+			}
+			pending.removeIf(Future::isDone);
+			if (new File(dir, "shutdown").exists()) {
+				for (Future<?> f : pending) f.get();
+				break;
+			}
+			Thread.sleep(POLL_MS);
+		}
+		shutdown();
+	}
+
+	private static void finish(String base, File claimed, Result r) throws IOException {
+		if (r.model != null) {
+			Files.write(new File(base + ".dot").toPath(), r.model.getBytes(StandardCharsets.UTF_8));
+		}
+		if (r.stats != null) {
+			Files.write(new File(base + ".json").toPath(), (r.stats.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+		claimed.renameTo(new File(base + (r.error == null ? ".done" : ".err")));
+		if (r.error != null) {
+			Files.write(new File(base + ".err").toPath(), (r.error + "\n").getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.APPEND);
+		}
+	}
+
+	private void shutdown() {
+		this.pool.shutdown();
+		this.hwPool.shutdown();
+	}
+
+}
@@ -0,0 +1,174 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import net.automatalib.automata.transducers.MealyMachine;
+import net.automatalib.automata.transducers.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+// Learns the policy at small associativities (-extrapolate 2,4,8), keeps the
+// policies of the simulator families (built-in and AgePolicy) matching all of
+// them, and checks the survivors at the target -w with conformance tests
+// instead of learning the large model. For 'hw', a '{ways}' in the proxy
+// command is replaced by the associativity (e.g. with way partitioning).
+class Extrapolation {
+
+	static class Candidate {
+		public final String name;
+		public final PolicyType type;
+		public final String spec; // AgePolicy parameters
+
+		public Candidate(PolicyType type, String spec) {
+			this.type = type;
+			this.spec = spec;
+			this.name = type == PolicyType.AGE ? "-p age -age_spec " + spec : "-p " + type.toString().toLowerCase();
+		}
+
+		public Config config(Config base, int ways) {
+			Config config = base.copy();
+			config.ways = ways;
+			config.policy = this.type;
+			config.age_spec = this.spec;
+			config.is_hw = false;
+			return config;
+		}
+
+		public CacheSUL sul(Config base, int ways) throws Exception {
+			return new CacheSUL(config(base, ways), Polca.buildAlphabet(ways));
+		}
+	}
+
+	// policies growing beyond this are assumed to be different
+	private static final int STATE_FACTOR = 4;
+	private static final PolicyType[] FAMILIES = {
+		PolicyType.LRU, PolicyType.PLRU, PolicyType.FIFO, PolicyType.MRU, PolicyType.LIP, PolicyType.PLIP,
+		PolicyType.SRRIPHP, PolicyType.SRRIPFP, PolicyType.SKYL2, PolicyType.SKYL3,
+	};
+
+	private final Polca polca;
+	private final Config config;
+	private final List<Integer> small;
+
+	public Extrapolation(Polca polca) {
+		this.polca = polca;
+		this.config = polca.getConfig();
+		this.small = new ArrayList<Integer>();
+		for (String w : this.config.extrapolate.split(",")) {
+			this.small.add(Integer.parseInt(w.trim()));
+		}
+	}
+
+	private List<Candidate> candidates() {
+		List<Candidate> out = new ArrayList<Candidate>();
+		for (PolicyType t : FAMILIES) {
+			out.add(new Candidate(t, null));
+		}
+		for (AgePolicy.Params p : AgePolicy.enumerate(2)) {
+			out.add(new Candidate(PolicyType.AGE, p.toString()));
+		}
+		return out;
+	}
+
+	public List<Candidate> run() throws Exception {
+		int target = this.config.ways;
+		String proxy = this.config.proxy_path;
+		List<Candidate> alive = candidates();
+		for (int w : this.small) {
+			this.config.ways = w;
+			if (proxy != null) this.config.proxy_path = proxy.replace("{ways}", Integer.toString(w));
+			if (!this.config.silent) System.out.println("# Learning " + w + " ways");
+			MealyMachine<?, String, ?, String> hyp = this.polca.learn();
+			if (hyp == null) throw new Exception("no model learnt at " + w + " ways");
+			Alphabet<String> alphabet = Polca.buildAlphabet(w);
+			CompactMealy<String, String> model = ModelIO.toCompact(hyp, alphabet);
+			alive.removeIf(c -> !matches(c, model, w, alphabet));
+			System.out.println(String.format("%d ways: %d states, %d candidates left", w, model.size(), alive.size()));
+			if (alive.isEmpty()) {
+				System.out.println("no policy matches, the model may be incomplete (raise -r_bound or use -r_rand) or outside the families");
+				return alive;
+			}
+		}
+
+		this.config.ways = target;
+		if (proxy != null) this.config.proxy_path = proxy.replace("{ways}", Integer.toString(target));
+		if (!alive.isEmpty()) {
+			alive = conformance(alive, target);
+		}
+		System.out.println(String.format("%d ways: %d candidates pass %d tests", target, alive.size(), this.config.r_bound));
+		for (Candidate c : alive) {
+			System.out.println("  " + c.name);
+		}
+		return alive;
+	}
+
+	private boolean matches(Candidate c, CompactMealy<String, String> model, int ways, Alphabet<String> alphabet) {
+		try {
+			Cache cache = CacheSUL.instantiateCache(c.config(this.config, ways));
+			return new PolicyExplorer(cache, ways, alphabet).matches(model, STATE_FACTOR * model.size());
+		} catch (Exception e) {
+			return false; // e.g. PLRU with other than a power of 2
+		}
+	}
+
+	// Random words steered by the first candidate: misses, hits on the block
+	// inserted by the last miss, and uniform hits. All candidates see the same
+	// words, the SUL is asked once per word.
+	private List<Candidate> conformance(List<Candidate> alive, int ways) throws Exception {
+		Alphabet<String> alphabet = Polca.buildAlphabet(ways);
+		Random random = this.config.seed != null ? new Random(this.config.seed) : new Random();
+		// the SUL is asked as in learn(), repeated when noisy
+		MealyMembershipOracle<String, String> sul = new HitFilterOracle(Polca.repeatOracle(this.config,
+				new CacheSULOracle(new CacheSUL(this.config, alphabet), this.config, "extrapolate", this.config.noise,
+						this.config.probability, random)));
+		List<CacheSUL> sims = new ArrayList<CacheSUL>();
+		for (Candidate c : alive) {
+			sims.add(c.sul(this.config, ways));
+		}
+		String miss = alphabet.getSymbol(ways);
+		for (int n = 0; n < this.config.r_bound && !sims.isEmpty(); n++) {
+			int len = ways + random.nextInt(3 * ways + 1);
+			CacheSUL guide = sims.get(0);
+			guide.pre();
+			WordBuilder<String> wb = new WordBuilder<>(len);
+			String victim = null;
+			for (int i = 0; i < len; i++) {
+				int r = random.nextInt(5);
+				String sym = r < 2 ? miss : (r == 2 && victim != null ? "h(" + victim + ")" : alphabet.getSymbol(random.nextInt(ways)));
+				String out = guide.step(sym);
+				if (sym.equals(miss)) victim = out;
+				wb.add(sym);
+			}
+			Word<String> word = wb.toWord();
+			Metrics.get().counter("extrapolate.tests").increment();
+			DefaultQuery<String, Word<String>> query = new DefaultQuery<String, Word<String>>(Word.epsilon(), word, null);
+			sul.processQueries(Collections.singletonList(query));
+			Word<String> expected = query.getOutput();
+			Iterator<CacheSUL> it = sims.iterator();
+			Iterator<Candidate> ic = alive.iterator();
+			List<Candidate> next = new ArrayList<Candidate>();
+			List<CacheSUL> nextSims = new ArrayList<CacheSUL>();
+			while (it.hasNext()) {
+				CacheSUL sim = it.next();
+				Candidate c = ic.next();
+				if (CacheSULOracle.answerQuery(sim, Word.epsilon(), word, ways, null, 0, random).equals(expected)) {
+					next.add(c);
+					nextSims.add(sim);
+				} else if (this.config.verbose) {
+					System.out.println("(extrapolate) " + c.name + " fails on " + word);
+				}
+			}
+			alive = next;
+			sims = nextSims;
+		}
+		return alive;
+	}
+
+}
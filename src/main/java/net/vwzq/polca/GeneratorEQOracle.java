@@ -0,0 +1,72 @@
+package net.vwzq.polca;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import de.learnlib.api.oracle.EquivalenceOracle.MealyEquivalenceOracle;
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.oracle.equivalence.AbstractTestWordEQOracle;
+import net.automatalib.automata.transducers.MealyMachine;
+import net.automatalib.automata.transducers.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+
+// Random words equivalence oracle drawing from WordGenerators (-r_rand).
+// Counts words and counterexamples of every generator (eq.words.<name> and
+// eq.ce.<name>), the yield is reported at the end of the run.
+class GeneratorEQOracle extends AbstractTestWordEQOracle<MealyMachine<?, String, ?, String>, String, Word<String>>
+		implements MealyEquivalenceOracle<String, String> {
+
+	private final List<WordGenerator> generators;
+	private final Alphabet<String> alphabet;
+	private final int limit;
+	private WordGenerator last;
+	private int turn;
+
+	public GeneratorEQOracle(MealyMembershipOracle<String, String> oracle, List<WordGenerator> generators,
+			Alphabet<String> alphabet, Integer limit) {
+		super(oracle);
+		this.generators = generators;
+		this.alphabet = alphabet;
+		this.limit = limit != null ? limit : 0;
+	}
+
+	@Override
+	public DefaultQuery<String, Word<String>> findCounterExample(MealyMachine<?, String, ?, String> hyp,
+			Collection<? extends String> inputs) {
+		CompactMealy<String, String> compact = ModelIO.toCompact(hyp, this.alphabet);
+		for (WordGenerator g : this.generators) {
+			g.setHypothesis(compact, this.alphabet);
+		}
+		DefaultQuery<String, Word<String>> ce = super.findCounterExample(hyp, inputs);
+		if (ce != null) {
+			// words are answered one at a time, so the last one is the counterexample
+			Metrics.get().counter("eq.ce." + this.last.name()).increment();
+		}
+		return ce;
+	}
+
+	@Override
+	protected Stream<Word<String>> generateTestWords(MealyMachine<?, String, ?, String> hyp,
+			Collection<? extends String> inputs) {
+		Stream<Word<String>> words = Stream.generate(() -> {
+			this.last = this.generators.get(this.turn++ % this.generators.size());
+			Metrics.get().counter("eq.words." + this.last.name()).increment();
+			return this.last.next();
+		});
+		// 0 is unbounded
+		return this.limit > 0 ? words.limit(this.limit) : words;
+	}
+
+	public static void report(List<WordGenerator> generators) {
+		for (WordGenerator g : generators) {
+			long words = Metrics.get().count("eq.words." + g.name());
+			long ces = Metrics.get().count("eq.ce." + g.name());
+			System.out.println(String.format("\t%s: %d words, %d counterexamples (1 per %s words)", g.name(), words, ces,
+					ces > 0 ? String.format("%.0f", (double) words / ces) : "-"));
+		}
+	}
+
+}
@@ -6,20 +6,46 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 class HW extends CachePolicy {
 
+	// One cachequery process per command line, e.g. one per cache set with -sets.
+	// A proxy stays alive between runs of the same JVM (e.g. -serve).
 	static class Proxy {
 
-		static BufferedReader stdout;
-		static PrintWriter stdin;
-		static String binary;
-		static boolean ready = false;
-		static Process proc;
+		private static final Map<String, Proxy> running = new HashMap<String, Proxy>();
 
-		public static void start(Config config) {
+		private BufferedReader stdout;
+		private PrintWriter stdin;
+		private final String binary;
+		private boolean ready = false;
+		private Process proc;
+		// probes measured for every level, see measure(), the oldest are dropped
+		final Map<String, Probe> measurements = new LinkedHashMap<String, Probe>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Probe> eldest) {
+				return size() > MAX_PROBES;
+			}
+		};
+
+		private Proxy(String binary) {
+			this.binary = binary;
+		}
+
+		public static synchronized Proxy get(Config config) {
+			Proxy proxy = running.computeIfAbsent(config.proxy_path, Proxy::new);
+			if (!proxy.isReady()) {
+				proxy.start();
+			}
+			return proxy;
+		}
+
+		public void start() {
 			try {
-				binary = config.proxy_path;
 				proc = Runtime.getRuntime().exec(binary);
 				stdout = new BufferedReader(new InputStreamReader(proc.getInputStream()));
 				stdin = new PrintWriter(new BufferedWriter(new OutputStreamWriter(proc.getOutputStream())));
@@ -39,14 +65,14 @@ class HW extends CachePolicy {
 			}
 		}
 
-		public static int write(String line) throws IOException {
+		public int write(String line) throws IOException {
 			if (!ready) throw new IOException("can't write on stopped proxy");
 			stdin.write(line + "\n");
 			stdin.flush();
 			return 0;
 		}
 
-		public static String read() throws IOException {
+		public String read() throws IOException {
 			if (!ready) throw new IOException("cant't read on stopped proxy");
 			String ret = stdout.readLine();
 			if (ret == null) {
@@ -55,13 +81,13 @@ class HW extends CachePolicy {
 			return ret;
 		}
 
-		public static boolean isReady() {
+		public boolean isReady() {
 			return ready;
 		}
 
-		public static void terminate() {
+		public void terminate() {
 			if (ready) {
-				stdin.write("q\n");
+				quit();
 				// Give time to turn on regular settings
 				try {
 					Thread.currentThread().sleep(1000);
@@ -71,7 +97,42 @@ class HW extends CachePolicy {
 			}
 		}
 
-		public static void reset(Config config) {
+		private void quit() {
+			stdin.write("q\n");
+			stdin.flush();
+		}
+
+		// drop the probes shared between levels, once all levels are learnt
+		public static synchronized void clearMeasurements(Config config) {
+			Proxy proxy = running.get(config.proxy_path);
+			if (proxy == null) return;
+			synchronized (proxy.measurements) {
+				proxy.measurements.clear();
+			}
+		}
+
+		// stop every proxy, e.g. on exit, all of them restore their settings at once
+		public static synchronized void terminateAll() {
+			boolean any = false;
+			for (Proxy proxy : running.values()) {
+				if (proxy.ready) {
+					proxy.quit();
+					any = true;
+				}
+			}
+			if (any) {
+				try {
+					Thread.sleep(1000);
+				} catch (Exception e) {}
+			}
+			for (Proxy proxy : running.values()) {
+				if (proxy.ready) proxy.proc.destroy();
+				proxy.ready = false;
+			}
+			running.clear();
+		}
+
+		public void reset() {
 			// In some systems running for a long time cause saturation.
 			// We reset when detecting errors, and sleep the process for a while.
 			terminate ();
@@ -80,11 +141,25 @@ class HW extends CachePolicy {
 				Thread.currentThread().sleep(5000);
 			} catch (Exception e) {}
 			System.out.println("retry!");
-			start(config);
+			start();
 		}
 
 	}
 
+	// Samples of a probe for every level, and how many of them each level used
+	static class Probe {
+		public final List<Map<String, int[]>> samples = new ArrayList<Map<String, int[]>>();
+		public final Map<String, Integer> used = new HashMap<String, Integer>();
+	}
+
+	// With -levels the proxy reports each candidate for all levels, so learners
+	// of later levels reuse them (Proxy.measurements). Levels are still learnt one
+	// after another and only identical queries are reused. A level uses each
+	// sample once, so that repeated queries still get independent samples, and a
+	// probe is dropped once the current and later levels used all of its samples.
+	private static final int MAX_PROBES = 1 << 16;
+	private static final Pattern LINE = Pattern.compile("^(?:\\((L1|L2|L3):\\d+\\) )?(.*) -> (\\d+)$");
+
 	private Config config;
 
 	private Proxy proxy;
@@ -92,10 +167,7 @@ class HW extends CachePolicy {
 	public HW (Config config) {
 		super (config); // no need
 		this.config = config;
-		if (!this.proxy.isReady()) {
-			this.proxy.start(this.config);
-			// if error?
-		}
+		this.proxy = Proxy.get(config);
 	}
 
 	/// Do majority vote to locateMiss
@@ -121,29 +193,18 @@ class HW extends CachePolicy {
 
 	// Find element replaced upon miss, and returns its index (i.e. abstractOutput)
 	public String locateMiss(ArrayList<String> word, ArrayList<String> candidates, boolean bypass) {
-		String pattern = "^(?:\\((?:L1|L2|L3):\\d+\\) )?(.*) -> (\\d+)$";
-		Pattern r = Pattern.compile(pattern);
+		if (this.config.locate == LocateType.GROUP) {
+			return this.locator.locate(candidates, group -> groupMisses(word, group, bypass));
+		}
 		String result = "";
 		int ret = -1, len = candidates.size(), rep = 0;
+		String query = this.config.prefix + " " + String.join(" ", word) + " [" + String.join(" ", candidates) + "]?";
 		while (rep < 100) {
 			boolean foundMiss = false;
 			try {
-				proxy.write(((rep > 0 || bypass) ? "rr " : "r ") + this.config.prefix + " " + String.join(" ", word) + " [" + String.join(" ", candidates) + "]?");
-				ArrayList<String> lines = new ArrayList<String>();
+				int[] counts = measure(query, len, rep > 0 || bypass);
 				for (int i = 0; i < len; i++) {
-					lines.add(this.proxy.read());
-				}
-				int i = 0;
-				for (String line : lines) {
-					Matcher m = r.matcher(line);
-					m.find();
-					try {
-						ret = Integer.parseInt(m.group(2), 10);
-					} catch (Exception e) {
-						// probably a cachequery syntax error or broken connection
-						e.printStackTrace();
-						return "";
-					}
+					ret = counts[i];
 					// check if it's miss
 					if (ret <= (this.config.repetitions * this.config.miss_ratio)) {
 						if (!foundMiss) {
@@ -160,16 +221,17 @@ class HW extends CachePolicy {
 						result = ""; // noisy measurements, better repeat
 						break;
 					}
-					i++;
 				}
 				// return if we are confident that we located the miss
 				if (result != "") {
 					return result;
 				}
 				// try again bypassing the cache
-				this.proxy.reset(this.config);
+				this.proxy.reset();
+				Metrics.get().counter("proxy.retries").increment();
 				rep++;
 			} catch (Exception e) {
+				// probably a cachequery syntax error or broken connection
 				e.printStackTrace();
 				return "";
 			}
@@ -177,6 +239,86 @@ class HW extends CachePolicy {
 		return "";
 	}
 
+	// Access the group right after the word, measuring every access of the group
+	// in the same run. The first miss can only be the victim.
+	private Boolean groupMisses(ArrayList<String> word, List<String> group, boolean bypass) {
+		String query = this.config.prefix + " " + String.join(" ", word) + " " + String.join("? ", group) + "?";
+		for (int rep = 0; rep < 100; rep++) {
+			try {
+				int[] counts = measure(query, group.size(), rep > 0 || bypass);
+				boolean noisy = false;
+				for (int ret : counts) {
+					if (ret <= (this.config.repetitions * this.config.miss_ratio)) {
+						return true;
+					} else if (ret < (this.config.repetitions * this.config.hit_ratio)) {
+						noisy = true;
+					}
+				}
+				if (!noisy) return false;
+				// try again bypassing the cache
+				this.proxy.reset();
+				Metrics.get().counter("proxy.retries").increment();
+			} catch (Exception e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		return null;
+	}
+
+	// Hit counts of each candidate for the level being learnt. Probes measured
+	// while learning another level are answered from memory, unless a fresh
+	// measurement is required (retries, votes).
+	private int[] measure(String query, int len, boolean fresh) throws IOException {
+		String level = this.config.level;
+		if (level != null && !fresh) {
+			synchronized (this.proxy.measurements) {
+				Probe known = this.proxy.measurements.get(query);
+				int next = known != null ? known.used.getOrDefault(level, 0) : 0;
+				if (known != null && next < known.samples.size() && known.samples.get(next).containsKey(level)) {
+					known.used.put(level, next + 1);
+					if (consumed(known, level)) this.proxy.measurements.remove(query);
+					Metrics.get().counter("proxy.shared").add(len);
+					return known.samples.get(next).get(level);
+				}
+			}
+		}
+		int levels = this.config.levels != null ? this.config.levels.size() : 1;
+		long start = System.nanoTime();
+		proxy.write((fresh ? "rr " : "r ") + query);
+		Map<String, int[]> counts = new HashMap<String, int[]>();
+		Map<String, Integer> seen = new HashMap<String, Integer>();
+		for (int i = 0; i < len * levels; i++) {
+			Matcher m = LINE.matcher(this.proxy.read());
+			if (!m.find()) throw new IOException("unexpected response to: " + query);
+			// untagged lines belong to the only level measured
+			String tag = (m.group(1) != null && this.config.levels != null) ? m.group(1) : "";
+			int idx = seen.merge(tag, 1, Integer::sum) - 1;
+			if (idx >= len) throw new IOException("too many lines for level " + tag);
+			counts.computeIfAbsent(tag, k -> new int[len])[idx] = Integer.parseInt(m.group(3), 10);
+		}
+		Metrics.get().histogram("proxy.roundtrip").record(System.nanoTime() - start);
+		Metrics.get().counter("proxy.measurements").add(len * levels);
+		if (level == null) return counts.values().iterator().next();
+		synchronized (this.proxy.measurements) {
+			Probe probe = this.proxy.measurements.computeIfAbsent(query, k -> new Probe());
+			probe.samples.add(counts);
+			probe.used.put(level, probe.samples.size());
+			if (consumed(probe, level)) this.proxy.measurements.remove(query);
+		}
+		if (!counts.containsKey(level)) throw new IOException("no measurement for level " + level);
+		return counts.get(level);
+	}
+
+	// neither 'level' nor the levels learnt after it have a sample of 'probe' left
+	private boolean consumed(Probe probe, String level) {
+		List<String> levels = this.config.levels;
+		for (String l : levels.subList(levels.indexOf(level), levels.size())) {
+			if (probe.used.getOrDefault(l, 0) < probe.samples.size()) return false;
+		}
+		return true;
+	}
+
 	public void close() {
 		this.proxy.terminate();
 	}
@@ -0,0 +1,69 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.api.query.Query;
+import net.automatalib.commons.util.Pair;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+// Hits always output '_' and only misses need the SUL, so:
+//  - suffixes without m() are answered directly
+//  - trailing hits are dropped before dispatch, they can't change any output
+//  - queries that become identical after that are sent once
+class HitFilterOracle implements MealyMembershipOracle<String, String> {
+
+	private static final String MISS = "m()";
+	private static final String HIT_OUTPUT = "_";
+
+	private final MealyMembershipOracle<String, String> delegate;
+
+	public HitFilterOracle(MealyMembershipOracle<String, String> delegate) {
+		this.delegate = delegate;
+	}
+
+	private static Word<String> hits(int len) {
+		WordBuilder<String> wb = new WordBuilder<>(len);
+		return wb.repeatAppend(len, HIT_OUTPUT).toWord();
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
+		Map<Pair<Word<String>, Word<String>>, List<Query<String, Word<String>>>> pending = new LinkedHashMap<>();
+		for (Query<String, Word<String>> q : queries) {
+			Word<String> suffix = q.getSuffix();
+			int last = suffix.asList().lastIndexOf(MISS);
+			if (last < 0) {
+				Metrics.get().counter("filter.answered").increment();
+				q.answer(hits(suffix.length()));
+				continue;
+			}
+			Word<String> trimmed = suffix.prefix(last + 1);
+			Metrics.get().counter("filter.trimmed_symbols").add(suffix.length() - trimmed.length());
+			pending.computeIfAbsent(Pair.of(q.getPrefix(), trimmed), k -> new ArrayList<>()).add(q);
+		}
+		if (pending.isEmpty()) return;
+
+		List<DefaultQuery<String, Word<String>>> batch = new ArrayList<>(pending.size());
+		for (Pair<Word<String>, Word<String>> key : pending.keySet()) {
+			batch.add(new DefaultQuery<String, Word<String>>(key.getFirst(), key.getSecond(), null));
+		}
+		this.delegate.processQueries(batch);
+
+		for (DefaultQuery<String, Word<String>> dq : batch) {
+			List<Query<String, Word<String>>> group = pending.get(Pair.of(dq.getPrefix(), dq.getSuffix()));
+			Metrics.get().counter("filter.merged").add(group.size() - 1);
+			for (Query<String, Word<String>> q : group) {
+				int dropped = q.getSuffix().length() - dq.getSuffix().length();
+				q.answer(dq.getOutput().concat(hits(dropped)));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,347 @@
+package net.vwzq.polca;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+// Registry with counters, latency histograms, gauges and per-round timings of
+// the learning pipeline. Exported as JSON (-metrics) or through JMX (-jmx).
+// Concurrent runs (sweeps, -serve, -sets) each get their own registry through
+// run(), which is added to the process-wide one when the run ends. Threads
+// started by a run take its registry with bind().
+class Metrics implements DynamicMBean {
+
+	private static final Metrics INSTANCE = new Metrics("main");
+	private static final ThreadLocal<Metrics> CURRENT = new ThreadLocal<Metrics>();
+	private static final AtomicLong RUNS = new AtomicLong();
+
+	// registry of the run on this thread, the process-wide one outside runs
+	public static Metrics get() {
+		Metrics m = CURRENT.get();
+		return m != null ? m : INSTANCE;
+	}
+
+	public static <T> T run(Callable<T> task) throws Exception {
+		Metrics parent = get();
+		Metrics metrics = new Metrics("run" + RUNS.incrementAndGet());
+		CURRENT.set(metrics);
+		try {
+			return task.call();
+		} finally {
+			restore(parent);
+			parent.add(metrics);
+		}
+	}
+
+	public static <T> Callable<T> bind(Callable<T> task) {
+		Metrics metrics = get();
+		return () -> {
+			Metrics previous = get();
+			CURRENT.set(metrics);
+			try {
+				return task.call();
+			} finally {
+				restore(previous);
+			}
+		};
+	}
+
+	public static Runnable bind(Runnable task) {
+		Metrics metrics = get();
+		return () -> {
+			Metrics previous = get();
+			CURRENT.set(metrics);
+			try {
+				task.run();
+			} finally {
+				restore(previous);
+			}
+		};
+	}
+
+	// pool threads are reused, don't leave a run's registry behind
+	private static void restore(Metrics previous) {
+		if (previous != INSTANCE) {
+			CURRENT.set(previous);
+		} else {
+			CURRENT.remove();
+		}
+	}
+
+	// log2 buckets over nanoseconds
+	static class Histogram {
+		private final long[] buckets = new long[64];
+		private long count, sum, min = Long.MAX_VALUE, max;
+
+		public synchronized void record(long nanos) {
+			if (nanos < 0) nanos = 0;
+			buckets[63 - Long.numberOfLeadingZeros(nanos | 1)]++;
+			count++;
+			sum += nanos;
+			min = Math.min(min, nanos);
+			max = Math.max(max, nanos);
+		}
+
+		public void add(Histogram other) {
+			long[] buckets;
+			long count, sum, min, max;
+			synchronized (other) {
+				buckets = other.buckets.clone();
+				count = other.count;
+				sum = other.sum;
+				min = other.min;
+				max = other.max;
+			}
+			synchronized (this) {
+				for (int i = 0; i < buckets.length; i++) {
+					this.buckets[i] += buckets[i];
+				}
+				this.count += count;
+				this.sum += sum;
+				this.min = Math.min(this.min, min);
+				this.max = Math.max(this.max, max);
+			}
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized double mean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		// upper bound of the bucket holding the percentile
+		public synchronized long percentile(double p) {
+			if (count == 0) return 0;
+			long rank = (long) Math.ceil(p * count), acc = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				acc += buckets[i];
+				if (acc >= rank) return Math.min(max, (2L << i) - 1);
+			}
+			return max;
+		}
+
+		public synchronized Map<String, Object> summary() {
+			Map<String, Object> out = new TreeMap<String, Object>();
+			out.put("count", count);
+			out.put("mean_us", mean() / 1000);
+			out.put("min_us", count == 0 ? 0 : min / 1000.0);
+			out.put("p50_us", percentile(0.5) / 1000.0);
+			out.put("p99_us", percentile(0.99) / 1000.0);
+			out.put("max_us", max / 1000.0);
+			out.put("total_ms", sum / 1e6);
+			return out;
+		}
+	}
+
+	static class Round {
+		public final String tag, run;
+		public final int index, states;
+		public final long learn_ns, eq_ns;
+		public Round(String tag, String run, int index, int states, long learn_ns, long eq_ns) {
+			this.tag = tag;
+			this.run = run; // tells concurrent runs apart
+			this.index = index;
+			this.states = states;
+			this.learn_ns = learn_ns;
+			this.eq_ns = eq_ns;
+		}
+	}
+
+	private final Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+	private final Map<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+	private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<String, DoubleSupplier>();
+	// only the latest rounds are kept, -serve and sweeps run for long
+	private static final int MAX_ROUNDS = 10000;
+	private final Deque<Round> rounds = new ArrayDeque<Round>();
+	private final String id;
+	private boolean jmx = false;
+
+	private Metrics(String id) {
+		this.id = id;
+	}
+
+	public LongAdder counter(String name) {
+		return this.counters.computeIfAbsent(name, k -> new LongAdder());
+	}
+
+	public Histogram histogram(String name) {
+		return this.histograms.computeIfAbsent(name, k -> new Histogram());
+	}
+
+	public void gauge(String name, DoubleSupplier supplier) {
+		this.gauges.put(name, supplier);
+	}
+
+	public long count(String name) {
+		LongAdder c = this.counters.get(name);
+		return c == null ? 0 : c.sum();
+	}
+
+	public void round(String tag, int index, int states, long learn_ns, long eq_ns) {
+		addRound(new Round(tag, this.id, index, states, learn_ns, eq_ns));
+		histogram("round.learn").record(learn_ns);
+		histogram("round.eq").record(eq_ns);
+	}
+
+	private void addRound(Round r) {
+		synchronized (this.rounds) {
+			if (this.rounds.size() >= MAX_ROUNDS) {
+				this.rounds.pollFirst();
+				counter("rounds.dropped").increment();
+			}
+			this.rounds.addLast(r);
+		}
+	}
+
+	// counters, histograms and rounds of a finished run, its gauges end with it
+	private void add(Metrics other) {
+		for (Map.Entry<String, LongAdder> e : other.counters.entrySet()) {
+			counter(e.getKey()).add(e.getValue().sum());
+		}
+		for (Map.Entry<String, Histogram> e : other.histograms.entrySet()) {
+			histogram(e.getKey()).add(e.getValue());
+		}
+		synchronized (other.rounds) {
+			for (Round r : other.rounds) {
+				addRound(r);
+			}
+		}
+	}
+
+	public synchronized void registerJmx() {
+		if (this.jmx) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("net.vwzq.polca:type=Metrics"));
+			this.jmx = true;
+		} catch (Exception e) {
+			System.err.println("can't register metrics MBean: " + e.getMessage());
+		}
+	}
+
+	// flat view used by JMX
+	private Map<String, Object> attributes() {
+		Map<String, Object> out = new TreeMap<String, Object>();
+		for (Map.Entry<String, LongAdder> e : this.counters.entrySet()) {
+			out.put(e.getKey(), e.getValue().sum());
+		}
+		for (Map.Entry<String, Histogram> e : this.histograms.entrySet()) {
+			for (Map.Entry<String, Object> s : e.getValue().summary().entrySet()) {
+				out.put(e.getKey() + "." + s.getKey(), s.getValue());
+			}
+		}
+		for (Map.Entry<String, DoubleSupplier> e : this.gauges.entrySet()) {
+			out.put(e.getKey(), e.getValue().getAsDouble());
+		}
+		return out;
+	}
+
+	public String toJson() {
+		StringBuilder sb = new StringBuilder("{\n  \"counters\": {");
+		String sep = "";
+		for (Map.Entry<String, LongAdder> e : new TreeMap<String, LongAdder>(this.counters).entrySet()) {
+			sb.append(sep).append("\n    \"").append(e.getKey()).append("\": ").append(e.getValue().sum());
+			sep = ",";
+		}
+		sb.append("\n  },\n  \"gauges\": {");
+		sep = "";
+		for (Map.Entry<String, DoubleSupplier> e : new TreeMap<String, DoubleSupplier>(this.gauges).entrySet()) {
+			sb.append(sep).append("\n    \"").append(e.getKey()).append("\": ").append(e.getValue().getAsDouble());
+			sep = ",";
+		}
+		sb.append("\n  },\n  \"histograms\": {");
+		sep = "";
+		for (Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(this.histograms).entrySet()) {
+			sb.append(sep).append("\n    \"").append(e.getKey()).append("\": {");
+			String sep2 = "";
+			for (Map.Entry<String, Object> s : e.getValue().summary().entrySet()) {
+				sb.append(sep2).append("\"").append(s.getKey()).append("\": ").append(s.getValue());
+				sep2 = ", ";
+			}
+			sb.append("}");
+			sep = ",";
+		}
+		sb.append("\n  },\n  \"rounds\": [");
+		sep = "";
+		synchronized (this.rounds) {
+			for (Round r : this.rounds) {
+				sb.append(sep).append(String.format("\n    {\"tag\": \"%s\", \"run\": \"%s\", \"round\": %d, \"states\": %d, \"learn_ms\": %.3f, \"eq_ms\": %.3f}",
+						r.tag, r.run, r.index, r.states, r.learn_ns / 1e6, r.eq_ns / 1e6));
+				sep = ",";
+			}
+		}
+		return sb.append("\n  ]\n}\n").toString();
+	}
+
+	public void writeJson(String path) throws IOException {
+		try (PrintStream out = new PrintStream(path)) {
+			out.print(toJson());
+		}
+	}
+
+	// DynamicMBean
+
+	@Override
+	public Object getAttribute(String name) throws AttributeNotFoundException {
+		Map<String, Object> attrs = attributes();
+		if (!attrs.containsKey(name)) throw new AttributeNotFoundException(name);
+		return attrs.get(name);
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) {
+		throw new UnsupportedOperationException("metrics are read-only");
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] names) {
+		Map<String, Object> attrs = attributes();
+		AttributeList list = new AttributeList();
+		for (String name : names) {
+			if (attrs.containsKey(name)) list.add(new Attribute(name, attrs.get(name)));
+		}
+		return list;
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) {
+		throw new UnsupportedOperationException(actionName);
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		Map<String, Object> attrs = attributes();
+		List<MBeanAttributeInfo> infos = new ArrayList<MBeanAttributeInfo>();
+		for (Map.Entry<String, Object> e : attrs.entrySet()) {
+			infos.add(new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(), e.getKey(), true, false, false));
+		}
+		return new MBeanInfo(Metrics.class.getName(), "Polca learning pipeline metrics",
+				infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+	}
+
+}
@@ -0,0 +1,35 @@
+package net.vwzq.polca;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.Query;
+import net.automatalib.words.Word;
+
+// Counts queries and symbols going through one layer of the oracle chain
+class MetricsOracle implements MealyMembershipOracle<String, String> {
+
+	private final MealyMembershipOracle<String, String> delegate;
+	private final LongAdder queries, symbols;
+	private final Metrics.Histogram latency;
+
+	public MetricsOracle(MealyMembershipOracle<String, String> delegate, String layer) {
+		this.delegate = delegate;
+		this.queries = Metrics.get().counter(layer + ".queries");
+		this.symbols = Metrics.get().counter(layer + ".symbols");
+		this.latency = Metrics.get().histogram(layer + ".batch");
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
+		for (Query<String, Word<String>> q : queries) {
+			this.symbols.add(q.getPrefix().length() + q.getSuffix().length());
+		}
+		this.queries.add(queries.size());
+		long start = System.nanoTime();
+		this.delegate.processQueries(queries);
+		this.latency.record(System.nanoTime() - start);
+	}
+
+}
@@ -0,0 +1,56 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Strategies to find which candidate was evicted by the miss ending a word.
+// They rely on a probe telling whether accessing a group of candidates right
+// after the word misses: hits don't change the content of the cache, so this
+// happens iff the victim is in the group.
+abstract class MissLocator {
+
+	interface Probe {
+		// null when the measurement is inconclusive
+		Boolean misses(List<String> group);
+	}
+
+	// returns "" when no victim could be located
+	abstract public String locate(ArrayList<String> candidates, Probe probe);
+
+	public static MissLocator create(Config config) {
+		if (config.locate == LocateType.GROUP) {
+			return new GroupTestingLocator();
+		}
+		return new LinearLocator();
+	}
+
+	// one probe per candidate, O(ways)
+	static class LinearLocator extends MissLocator {
+		public String locate(ArrayList<String> candidates, Probe probe) {
+			for (int i = 0; i < candidates.size(); i++) {
+				Metrics.get().counter("locate.probes").increment();
+				Boolean miss = probe.misses(candidates.subList(i, i + 1));
+				if (miss == null) return "";
+				if (miss) return candidates.get(i);
+			}
+			return "";
+		}
+	}
+
+	// binary search over halves of the candidates, O(log ways)
+	static class GroupTestingLocator extends MissLocator {
+		public String locate(ArrayList<String> candidates, Probe probe) {
+			List<String> group = candidates;
+			while (group.size() > 1) {
+				List<String> half = group.subList(0, group.size() / 2);
+				Metrics.get().counter("locate.probes").increment();
+				Boolean miss = probe.misses(half);
+				if (miss == null) return "";
+				group = miss ? half : group.subList(half.size(), group.size());
+			}
+			// exactly one candidate is out of the cache, the last one needs no probe
+			return group.isEmpty() ? "" : group.get(0);
+		}
+	}
+
+}
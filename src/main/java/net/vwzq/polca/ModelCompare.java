@@ -0,0 +1,166 @@
+package net.vwzq.polca;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import net.automatalib.automata.transducers.impl.compact.CompactMealy;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+
+// Compares learnt models without leaving the JVM (replaces scripts/isomorph.py):
+//   -compare a.dot,b.dot   equivalence, isomorphism and a separating word
+//   -compare models/       clusters every .dot (or binary .mealy) by behaviour
+// A model is fingerprinted twice, both over a canonical numbering of states
+// (breadth first from the initial state, inputs in sorted order):
+//   structure: the reachable model as it is, equal iff the graphs are isomorphic
+//   behaviour: the minimized model, equal iff the models are equivalent
+class ModelCompare {
+
+	static class Entry {
+		public final String path;
+		public final CompactMealy<String, String> model;
+		public final String structure, behaviour;
+		public final int states, minStates;
+
+		public Entry(String path) throws IOException {
+			this.path = path;
+			this.model = ModelIO.read(path);
+			Alphabet<String> alphabet = this.model.getInputAlphabet();
+			CompactMealy<String, String> min = Automata.minimize(this.model, alphabet, new CompactMealy<String, String>(alphabet));
+			this.structure = fingerprint(this.model);
+			this.behaviour = fingerprint(min);
+			this.states = this.model.size();
+			this.minStates = min.size();
+		}
+	}
+
+	// breadth first numbering from the initial state, unreachable states are dropped
+	public static String canonical(CompactMealy<String, String> model) {
+		List<String> inputs = new ArrayList<String>(model.getInputAlphabet());
+		Collections.sort(inputs);
+		Map<Integer, Integer> ids = new HashMap<Integer, Integer>();
+		Deque<Integer> queue = new ArrayDeque<Integer>();
+		StringBuilder sb = new StringBuilder(String.join(" ", inputs)).append('\n');
+		Integer init = model.getInitialState();
+		if (init == null) return sb.toString();
+		ids.put(init, 0);
+		queue.add(init);
+		while (!queue.isEmpty()) {
+			int s = queue.poll();
+			sb.append(ids.get(s)).append(':');
+			for (String i : inputs) {
+				Integer t = model.getSuccessor(s, i);
+				if (t == null) {
+					sb.append(" -");
+					continue;
+				}
+				if (!ids.containsKey(t)) {
+					ids.put(t, ids.size());
+					queue.add(t);
+				}
+				sb.append(' ').append(model.getOutput(s, i)).append('>').append(ids.get(t));
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	public static String fingerprint(CompactMealy<String, String> model) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(canonical(model).getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : hash) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// null if equivalent, both models need the same inputs
+	public static Word<String> separatingWord(CompactMealy<String, String> a, CompactMealy<String, String> b) {
+		return Automata.findSeparatingWord(a, b, a.getInputAlphabet());
+	}
+
+	private static List<String> expand(String spec) {
+		List<String> paths = new ArrayList<String>();
+		for (String p : spec.split(",")) {
+			File f = new File(p.trim());
+			if (f.isDirectory()) {
+				File[] dots = f.listFiles((dir, name) -> name.endsWith(".dot") || name.endsWith(ModelIO.BINARY_EXT));
+				if (dots != null) {
+					Arrays.sort(dots);
+					for (File d : dots) paths.add(d.getPath());
+				}
+			} else {
+				paths.add(f.getPath());
+			}
+		}
+		return paths;
+	}
+
+	private static List<Entry> load(List<String> paths) throws IOException {
+		try {
+			return paths.parallelStream().map(p -> {
+				try {
+					return new Entry(p);
+				} catch (IOException e) {
+					throw new UncheckedIOException(p + ": " + e.getMessage(), e);
+				}
+			}).collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	public static void run(String spec) throws IOException {
+		List<Entry> entries = load(expand(spec));
+		if (entries.isEmpty()) {
+			throw new IOException("no models found in: " + spec);
+		}
+		for (Entry e : entries) {
+			System.out.println(String.format("%s  %s  %d states (%d minimal)", e.behaviour.substring(0, 16), e.path,
+					e.states, e.minStates));
+		}
+		if (entries.size() == 2) {
+			Entry a = entries.get(0), b = entries.get(1);
+			if (!new HashSet<String>(a.model.getInputAlphabet()).equals(new HashSet<String>(b.model.getInputAlphabet()))) {
+				System.out.println("different alphabets");
+				return;
+			}
+			System.out.println("isomorphic: " + a.structure.equals(b.structure));
+			System.out.println("equivalent: " + a.behaviour.equals(b.behaviour));
+			if (!a.behaviour.equals(b.behaviour)) {
+				System.out.println("separating word: " + separatingWord(a.model, b.model));
+			}
+			return;
+		}
+		// clusters of equivalent models
+		Map<String, List<String>> clusters = new TreeMap<String, List<String>>();
+		for (Entry e : entries) {
+			clusters.computeIfAbsent(e.behaviour, k -> new ArrayList<String>()).add(e.path);
+		}
+		System.out.println(clusters.size() + " behaviours:");
+		for (Map.Entry<String, List<String>> c : clusters.entrySet()) {
+			System.out.println("  " + c.getKey().substring(0, 16) + "  " + String.join(" ", c.getValue()));
+		}
+	}
+
+}
@@ -0,0 +1,298 @@
+package net.vwzq.polca;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.automatalib.automata.transducers.MealyMachine;
+import net.automatalib.automata.transducers.impl.compact.CompactMealy;
+import net.automatalib.serialization.dot.GraphDOT;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.impl.Alphabets;
+
+// Reading and writing of learnt Mealy machines, either as DOT or in a compact
+// binary format (.mealy), big endian:
+//   int magic 'PMLY', short version, short flags (0)
+//   int #inputs, strings     (short length + UTF-8 bytes)
+//   int #outputs, strings
+//   int #states, int initial state
+//   int[#states * #inputs]   successor, -1 if undefined
+//   int[#states * #inputs]   index of output, -1 if undefined
+// Tables are dense and row major (state, input), read through a memory map.
+class ModelIO {
+
+	public static final String BINARY_EXT = ".mealy";
+	private static final int MAGIC = 0x504d4c59; // PMLY
+	private static final short VERSION = 1;
+
+	private static final Pattern STATE = Pattern.compile("^\\s*(\\w+)\\s*\\[shape=.*\\];?\\s*$");
+	private static final Pattern EDGE = Pattern.compile("^\\s*(\\w+)\\s*->\\s*(\\w+)\\s*\\[label=\"(.*) / (.*)\"\\];?\\s*$");
+	private static final Pattern START = Pattern.compile("^\\s*__start0\\s*->\\s*(\\w+);?\\s*$");
+
+	public static void writeDot(MealyMachine<?, String, ?, String> model, Alphabet<String> alphabet, String path)
+			throws IOException {
+		try (PrintStream out = new PrintStream(path)) {
+			GraphDOT.write(model, alphabet, out);
+		}
+	}
+
+	// format chosen by extension
+	public static void write(MealyMachine<?, String, ?, String> model, Alphabet<String> alphabet, String path)
+			throws IOException {
+		if (path.endsWith(BINARY_EXT)) {
+			writeBinary(model, alphabet, path);
+		} else {
+			writeDot(model, alphabet, path);
+		}
+	}
+
+	// format chosen by content
+	public static CompactMealy<String, String> read(String path) throws IOException {
+		return isBinary(path) ? readBinary(path) : readDot(path);
+	}
+
+	public static boolean isBinary(String path) throws IOException {
+		try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			ByteBuffer head = ByteBuffer.allocate(4);
+			while (head.hasRemaining() && ch.read(head) >= 0);
+			return !head.hasRemaining() && head.getInt(0) == MAGIC;
+		}
+	}
+
+	public static void writeBinary(MealyMachine<?, String, ?, String> model, Alphabet<String> alphabet, String path)
+			throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path))) {
+			writeBinary(model, alphabet, out);
+		}
+	}
+
+	public static void writeBinary(MealyMachine<?, String, ?, String> model, Alphabet<String> alphabet,
+			OutputStream stream) throws IOException {
+		CompactMealy<String, String> m = toCompact(model, alphabet);
+		int states = m.size(), inputs = alphabet.size();
+		Map<String, Integer> outputs = new LinkedHashMap<String, Integer>();
+		int[] succ = new int[states * inputs];
+		int[] out = new int[states * inputs];
+		for (int s = 0; s < states; s++) {
+			for (int i = 0; i < inputs; i++) {
+				Integer t = m.getSuccessor(s, alphabet.getSymbol(i));
+				succ[s * inputs + i] = t != null ? t : -1;
+				out[s * inputs + i] = t != null
+						? outputs.computeIfAbsent(m.getOutput(s, alphabet.getSymbol(i)), o -> outputs.size())
+						: -1;
+			}
+		}
+
+		DataOutputStream data = new DataOutputStream(stream);
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		data.writeShort(0);
+		data.writeInt(inputs);
+		for (String i : alphabet) writeString(data, i);
+		data.writeInt(outputs.size());
+		for (String o : outputs.keySet()) writeString(data, o);
+		data.writeInt(states);
+		data.writeInt(m.getInitialState() != null ? m.getInitialState() : -1);
+		for (int t : succ) data.writeInt(t);
+		for (int o : out) data.writeInt(o);
+		data.flush();
+	}
+
+	public static CompactMealy<String, String> readBinary(String path) throws IOException {
+		try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			return readBinary(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		} catch (IOException e) {
+			throw new IOException(path + ": " + e.getMessage(), e);
+		}
+	}
+
+	public static CompactMealy<String, String> readBinary(ByteBuffer buf) throws IOException {
+		try {
+			if (buf.getInt() != MAGIC) {
+				throw new IOException("not a binary model");
+			}
+			short version = buf.getShort();
+			if (version != VERSION) {
+				throw new IOException("unsupported binary model version " + version);
+			}
+			buf.getShort(); // flags
+			// counts are checked against the bytes left before anything is allocated
+			List<String> inputs = new ArrayList<String>();
+			for (int n = readCount(buf, 2, "inputs"); inputs.size() < n;) inputs.add(readString(buf));
+			if (inputs.isEmpty()) {
+				throw new IOException("corrupt inputs");
+			}
+			String[] outputs = new String[readCount(buf, 2, "outputs")];
+			for (int i = 0; i < outputs.length; i++) outputs[i] = readString(buf);
+			int states = buf.getInt(), initial = buf.getInt();
+			if (states < 0 || 8L * states * inputs.size() > buf.remaining()) {
+				throw new IOException("corrupt state count");
+			}
+			if (initial < -1 || initial >= states) {
+				throw new IOException("corrupt initial state");
+			}
+
+			Alphabet<String> alphabet = Alphabets.fromList(inputs);
+			CompactMealy<String, String> model = new CompactMealy<String, String>(alphabet, states);
+			for (int s = 0; s < states; s++) model.addState();
+			// output table starts right after the successor table
+			int base = (int) (buf.position() + 4L * states * inputs.size());
+			for (int s = 0, k = 0; s < states; s++) {
+				for (int i = 0; i < inputs.size(); i++, k++) {
+					int t = buf.getInt(), o = buf.getInt(base + 4 * k);
+					if (t < -1 || t >= states || o < -1 || o >= outputs.length || (t < 0) != (o < 0)) {
+						throw new IOException("corrupt transition table");
+					}
+					if (t >= 0) model.setTransition(s, i, t, outputs[o]);
+				}
+			}
+			if (initial >= 0) model.setInitialState(initial);
+			return model;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IOException("truncated binary model");
+		}
+	}
+
+	// number of entries of at least 'bytes' each that follow
+	private static int readCount(ByteBuffer buf, int bytes, String what) throws IOException {
+		int n = buf.getInt();
+		if (n < 0 || (long) n * bytes > buf.remaining()) {
+			throw new IOException("corrupt " + what + " count");
+		}
+		return n;
+	}
+
+	private static void writeString(DataOutputStream data, String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		data.writeShort(b.length);
+		data.write(b);
+	}
+
+	private static String readString(ByteBuffer buf) {
+		byte[] b = new byte[buf.getShort() & 0xffff];
+		buf.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	// .dot <-> .mealy, direction given by the extension of 'dst'
+	public static void convert(String src, String dst) throws IOException {
+		CompactMealy<String, String> model = read(src);
+		write(model, model.getInputAlphabet(), dst);
+	}
+
+	public static CompactMealy<String, String> readDot(String path) throws IOException {
+		try (Reader reader = new FileReader(path)) {
+			return readDot(reader);
+		}
+	}
+
+	// Parse DOT files as written by GraphDOT, e.g.:
+	//   s0 [shape="circle" label="0"];
+	//   s0 -> s1 [label="h(0) / _"];
+	//   __start0 -> s0;
+	// States keep the order of declaration, inputs the order of first appearance.
+	public static CompactMealy<String, String> readDot(Reader reader) throws IOException {
+		List<String> states = new ArrayList<String>();
+		List<String[]> edges = new ArrayList<String[]>();
+		Map<String, Boolean> inputs = new LinkedHashMap<String, Boolean>();
+		String initial = null;
+
+		BufferedReader in = new BufferedReader(reader);
+		String line;
+		while ((line = in.readLine()) != null) {
+			Matcher m;
+			if ((m = START.matcher(line)).matches()) {
+				initial = m.group(1);
+			} else if ((m = EDGE.matcher(line)).matches()) {
+				edges.add(new String[] { m.group(1), m.group(2), m.group(3).trim(), m.group(4).trim() });
+				inputs.put(m.group(3).trim(), true);
+			} else if ((m = STATE.matcher(line)).matches() && !m.group(1).startsWith("__start")) {
+				states.add(m.group(1));
+			}
+		}
+		if (states.isEmpty()) {
+			throw new IOException("no states found");
+		}
+
+		Alphabet<String> alphabet = Alphabets.fromList(new ArrayList<String>(inputs.keySet()));
+		CompactMealy<String, String> model = new CompactMealy<String, String>(alphabet, states.size());
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		for (String s : states) {
+			ids.put(s, model.addState());
+		}
+		for (String[] e : edges) {
+			Integer src = ids.get(e[0]), dst = ids.get(e[1]);
+			if (src == null || dst == null) {
+				throw new IOException("undeclared state in edge " + e[0] + " -> " + e[1]);
+			}
+			model.setTransition(src, alphabet.getSymbolIndex(e[2]), dst, e[3]);
+		}
+		model.setInitialState(ids.get(initial != null ? initial : states.get(0)));
+		return model;
+	}
+
+	// Shortest input words reaching each state (breadth first), indexed by state
+	public static List<Word<String>> accessSequences(CompactMealy<String, String> model) {
+		List<Word<String>> access = new ArrayList<Word<String>>(Collections.nCopies(model.size(), (Word<String>) null));
+		Deque<Integer> queue = new ArrayDeque<Integer>();
+		Integer init = model.getInitialState();
+		if (init == null) return access;
+		access.set(init, Word.epsilon());
+		queue.add(init);
+		while (!queue.isEmpty()) {
+			int s = queue.poll();
+			for (String i : model.getInputAlphabet()) {
+				Integer t = model.getSuccessor(s, i);
+				if (t != null && access.get(t) == null) {
+					access.set(t, access.get(s).append(i));
+					queue.add(t);
+				}
+			}
+		}
+		return access;
+	}
+
+	// Copy any Mealy machine into a compact one, states numbered in iteration order
+	public static <S, T> CompactMealy<String, String> toCompact(MealyMachine<S, String, T, String> model,
+			Alphabet<String> alphabet) {
+		CompactMealy<String, String> out = new CompactMealy<String, String>(alphabet, model.size());
+		Map<S, Integer> ids = new HashMap<S, Integer>();
+		for (S s : model.getStates()) {
+			ids.put(s, out.addState());
+		}
+		for (S s : model.getStates()) {
+			for (int i = 0; i < alphabet.size(); i++) {
+				T t = model.getTransition(s, alphabet.getSymbol(i));
+				if (t != null) {
+					out.setTransition(ids.get(s), i, ids.get(model.getSuccessor(t)), model.getTransitionOutput(t));
+				}
+			}
+		}
+		out.setInitialState(ids.get(model.getInitialState()));
+		return out;
+	}
+
+}
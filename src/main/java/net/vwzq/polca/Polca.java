@@ -16,13 +16,22 @@
 package net.vwzq.polca;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.function.Function;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.commons.cli.*;
 
@@ -78,6 +87,8 @@ enum PolicyType {
 	HW,
 	SKYL3,
 	SKYL2,
+	SKETCH,
+	AGE,
 }
 
 enum LearnAlgorithmType {
@@ -91,19 +102,26 @@ enum LearnAlgorithmType {
 	RS,
 }
 
+enum LocateType {
+	LINEAR,
+	GROUP,
+}
+
 enum NoiseType {
 	PRE,
 	POST,
 	CLEAN,
 }
 
-class Config {
+class Config implements Cloneable {
 
 	public int max_depth;
 	public int ways;
 	public PolicyType policy;
 	public boolean is_random;
 	public boolean no_cache;
+	public boolean no_test_store;
+	public boolean no_translation_cache;
 	public boolean verbose;
 	public boolean temp_model;
 	public boolean silent;
@@ -111,6 +129,7 @@ class Config {
 	public String proxy_path;
 	public String output_path;
 	public int r_min, r_len, r_bound;
+	public String r_rand;
 	public int repetitions;
 	public Float hit_ratio, miss_ratio;
 	public String prefix;
@@ -121,12 +140,39 @@ class Config {
 	public double length_factor;
 	public NoiseType noise;
 	public float probability;
+	public long cache_size;
+	public List<LearnAlgorithmType> portfolio;
+	public Long seed;
+	public String ref_dir;
+	public double mq_confidence;
+	public int mq_min, mq_max;
+	public String mq_legacy;
+	public int prefetch;
+	public List<String> levels;
+	public String level;
+	public LocateType locate;
+	public String sketch_path;
+	public String sketch_policy;
+	public String age_spec;
+	public String extrapolate;
+	public String workers;
+	public String sketch_template;
+
+	// shallow, e.g. the same config at other ways
+	public Config copy() {
+		try {
+			return (Config) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
 	public Config (CommandLine cmd) throws Exception {
 		this.max_depth = Integer.parseInt(cmd.getOptionValue("depth", "1"));
 		this.ways = Integer.parseInt(cmd.getOptionValue("ways", "4"));
 		this.r_min = Integer.parseInt(cmd.getOptionValue("r_min", "10"));
 		this.r_len = Integer.parseInt(cmd.getOptionValue("r_len", "30"));
+		this.r_rand = cmd.getOptionValue("r_rand");
 		this.r_bound = Integer.parseInt(cmd.getOptionValue("r_bound", "200"));
 		this.repetitions = Integer.parseInt(cmd.getOptionValue("repetitions", "100"));
 		this.max_size = Integer.parseInt(cmd.getOptionValue("max_size", "2147483647"));
@@ -134,6 +180,33 @@ class Config {
 		this.miss_ratio = Float.parseFloat(cmd.getOptionValue("miss_ratio", "0.2"));
 		this.votes = Integer.parseInt(cmd.getOptionValue("votes", "1"));
 		this.prefix = cmd.getOptionValue("prefix", "@");
+		this.cache_size = Long.parseLong(cmd.getOptionValue("cache_size", "0"));
+		this.seed = cmd.hasOption("seed") ? Long.parseLong(cmd.getOptionValue("seed")) : null;
+		this.ref_dir = cmd.getOptionValue("ref_dir", ".polca/references");
+		this.mq_confidence = Double.parseDouble(cmd.getOptionValue("mq_conf", "0.99"));
+		this.mq_min = Integer.parseInt(cmd.getOptionValue("mq_min", "2"));
+		this.mq_max = Integer.parseInt(cmd.getOptionValue("mq_max", "20"));
+		this.mq_legacy = cmd.getOptionValue("mq_legacy");
+		if (this.mq_legacy != null && this.mq_legacy.split(",").length != 3) {
+			throw new Exception("mq_legacy expects three values, e.g. '10,0.7,20'");
+		}
+		this.prefetch = Integer.parseInt(cmd.getOptionValue("prefetch", "0"));
+		switch (cmd.getOptionValue("locate", "linear").toLowerCase()) {
+			case "linear":
+				this.locate = LocateType.LINEAR;
+				break;
+			case "group":
+				this.locate = LocateType.GROUP;
+				break;
+			default:
+				throw new Exception("unsupported locate strategy");
+		}
+		this.sketch_path = cmd.getOptionValue("sketch");
+		this.sketch_policy = cmd.getOptionValue("sketch_policy");
+		this.age_spec = cmd.getOptionValue("age_spec");
+		this.extrapolate = cmd.getOptionValue("extrapolate");
+		this.workers = cmd.getOptionValue("workers");
+		this.sketch_template = cmd.getOptionValue("template", "simple");
 		this.is_hw = false;
 
 		String noise = cmd.getOptionValue("n");
@@ -186,37 +259,46 @@ class Config {
 			case "new1":
 				this.policy = PolicyType.SKYL2;
 				break;
+			case "sketch":
+				this.policy = PolicyType.SKETCH;
+				break;
+			case "age":
+				this.policy = PolicyType.AGE;
+				break;
 			default:
 				throw new Exception("unsupported policy");
 		}
 
-		switch (cmd.getOptionValue("learner", "pas").toLowerCase()) {
-			case "pas":
-				this.learner = LearnAlgorithmType.PAS;
-				break;
-			case "ttt":
-				this.learner = LearnAlgorithmType.TTT;
-				break;
-			case "kv":
-				this.learner = LearnAlgorithmType.KV;
-				break;
-			case "dhc":
-				this.learner = LearnAlgorithmType.DHC;
-				break;
-			case "mp":
-				this.learner = LearnAlgorithmType.MP;
-				break;
-			case "rs":
-				this.learner = LearnAlgorithmType.RS;
-				break;
-			case "dt":
-				this.learner = LearnAlgorithmType.DT;
-				break;
-			case "lstar":
-				this.learner = LearnAlgorithmType.LSTAR;
-				break;
-			default:
-				throw new Exception("unsupported learning algorithm");
+		this.learner = parseLearner(cmd.getOptionValue("learner", "pas"));
+
+		if (cmd.hasOption("portfolio")) {
+			this.portfolio = new ArrayList<LearnAlgorithmType>();
+			for (String name : cmd.getOptionValue("portfolio").split(",")) {
+				LearnAlgorithmType type = parseLearner(name.trim());
+				if (type == LearnAlgorithmType.PAS) {
+					throw new Exception("pas can't be used in a portfolio");
+				}
+				this.portfolio.add(type);
+			}
+		}
+
+		// pas scores against a reference learnt on a local simulator
+		if (this.workers != null && this.learner == LearnAlgorithmType.PAS && this.portfolio == null) {
+			throw new Exception("pas can't be used with workers, choose another learner (-l)");
+		}
+
+		if (cmd.hasOption("levels")) {
+			if (!this.is_hw) {
+				throw new Exception("levels can only be used with 'hw' policy");
+			}
+			this.levels = new ArrayList<String>();
+			for (String name : cmd.getOptionValue("levels").split(",")) {
+				String level = name.trim().toUpperCase();
+				if (!level.matches("L[123]")) {
+					throw new Exception("unsupported level: " + name);
+				}
+				this.levels.add(level);
+			}
 		}
 
 		if (this.policy == PolicyType.HW && !cmd.hasOption("binary")) {
@@ -226,11 +308,36 @@ class Config {
 		this.output_path = cmd.getOptionValue("output", "");
 		this.is_random = cmd.hasOption("random");
 		this.no_cache = cmd.hasOption("no_cache");
+		this.no_test_store = cmd.hasOption("no_test_store");
+		this.no_translation_cache = cmd.hasOption("no_translation_cache");
 		this.verbose = cmd.hasOption("verbose") && !cmd.hasOption("silent");
 		this.temp_model = cmd.hasOption("temp");
 		this.silent = cmd.hasOption("silent");
 	}
 
+	public static LearnAlgorithmType parseLearner(String name) throws Exception {
+		switch (name.toLowerCase()) {
+			case "pas":
+				return LearnAlgorithmType.PAS;
+			case "ttt":
+				return LearnAlgorithmType.TTT;
+			case "kv":
+				return LearnAlgorithmType.KV;
+			case "dhc":
+				return LearnAlgorithmType.DHC;
+			case "mp":
+				return LearnAlgorithmType.MP;
+			case "rs":
+				return LearnAlgorithmType.RS;
+			case "dt":
+				return LearnAlgorithmType.DT;
+			case "lstar":
+				return LearnAlgorithmType.LSTAR;
+			default:
+				throw new Exception("unsupported learning algorithm");
+		}
+	}
+
 }
 
 public final class Polca {
@@ -238,13 +345,18 @@ public final class Polca {
 	private static final String Set = null;
 	private Config config;
 	private long count;
+	private RunStats stats;
+	private PrefetchOracle prefetch;
 
     public Polca (CommandLine cmd) throws Exception {
 		this.config = new Config(cmd);
     }
 
-	public static void main(String[] args) throws Exception {
+	public Polca(Config config) {
+		this.config = config;
+	}
 
+	public static Options buildOptions() {
 		// Options
 		Options options = new Options();
 
@@ -252,37 +364,94 @@ public final class Polca {
 		options.addOption(new Option("d", "depth", true, "max_depth for membership queries (default: 1)"));
 		options.addOption(new Option("w", "ways", true, "cache associativity (default: 4)"));
 		options.addOption(new Option("p", "policy", true,
-				"simulator cache policy: fifo|lru|plru|lip|plip|mru|srriphp|srripfp|new1|new2|hw (default: 'fifo')"));
+				"simulator cache policy: fifo|lru|plru|lip|plip|mru|srriphp|srripfp|new1|new2|sketch|age|hw (default: 'fifo')"));
+		options.addOption(new Option("sketch_policy", true, "synthesized sketch program (.out or .clean) for 'sketch' policy"));
+		options.addOption(new Option("age_spec", true,
+				"parameters of 'age' policy, e.g. 'bits=2,insert=2,hit=0000,age=miss,tie=left,init=max'"));
 		options.addOption(new Option("b", "binary", true, "path to proxy for 'hw' policy"));
 		//noise
 		options.addOption(new Option("n", "noise", true, "type of noise pre|post|clean"));
 		options.addOption(new Option("prob", "noise probability", true, "probability of noise"));
 		// general
-		options.addOption(new Option("o", "output", true, "write learnt .dot model into output file"));
+		options.addOption(new Option("o", "output", true, "write learnt model into output file (.dot, or binary if .mealy)"));
 		// other
+		options.addOption(new Option("locate", true,
+				"strategy to locate evicted blocks: linear (one probe per candidate) | group (binary search) (default: 'linear')"));
+		options.addOption(new Option("extrapolate", true,
+				"learn at these small ways (e.g. '2,4,8'), then test the matching simulator policies at -w instead of learning it"));
+		options.addOption(new Option("workers", true,
+				"send membership queries to workers started with -worker, e.g. 'lab1:7000,lab2:7000'"));
+		options.addOption(new Option("worker", true,
+				"answer queries of a -workers coordinator on this port, with the SUL of the other options"));
+		options.addOption(new Option("sets", true,
+				"group cache sets (e.g. '0-63') by short experiments and learn one set per group, '{set}' in -b is replaced by the set"));
+		options.addOption(new Option("levels", true,
+				"learn several levels from the same measurements, e.g. 'l1,l2,l3' (proxy must report all of them)"));
 		options.addOption(new Option("prefix", true, "prefix before every query, used to fill cache (default: '@')"));
 		options.addOption(new Option("r", "repetitions", true, "number of measurements by cachequery (default: 100)"));
 		options.addOption(new Option("votes", true, "number of votes for deciding result (default: 1)"));
 		options.addOption(new Option("hit_ratio", true, "ratio of hits to consider a HIT (default: 0.8)"));
 		options.addOption(new Option("miss_ratio", true, "ratio of misses to consider a MISS (default: 0.2)"));
+		options.addOption(new Option("mq_conf", true, "target confidence of repeated membership queries (default: 0.99)"));
+		options.addOption(new Option("mq_min", true, "minimum repetitions of a noisy membership query (default: 2)"));
+		options.addOption(new Option("mq_max", true, "maximum repetitions of a noisy membership query (default: 20)"));
+		options.addOption(new Option("mq_legacy", true, "use fixed ProbabilisticOracle with given constants instead, e.g. '10,0.7,20'"));
 		options.addOption(new Option("revision_ratio", true, "NEW"));
 		options.addOption(new Option("length_factor", true, "NEW"));
+		options.addOption(new Option("ref_dir", true, "directory storing PAS reference models (default: '.polca/references')"));
 		// learning settings
 		options.addOption(
 				new Option("l", "learner", true, "learning algorithm pas|lstar|kv|mp|rs|dhc|dt|ttt (default: 'pas')"));
+		options.addOption(new Option("portfolio", true,
+				"run several learners concurrently over a shared cache, e.g. 'kv,ttt,lstar' (overrides -l)"));
 		options.addOption(new Option("m", "max_size", true, "maximum number of states of SUL"));
 		options.addOption(new Option("r_min", true, "minimal length of random word (default: 10)"));
 		options.addOption(new Option("r_len", true, "expected length of random word (r_min + r_len) (default: 30)"));
 		options.addOption(new Option("r_bound", true,
 				"bound on queries for equivalence, set to 0 for unbounded (default: 1000)"));
-		options.addOption(new Option("r_rand", true, "TODO: select custom random generator"));
+		options.addOption(new Option("r_rand", true,
+				"random word generators for equivalence: uniform|miss[:p]|pressure|coverage|fixed[:seed]|<class>, comma separated"));
 		// flags
 		options.addOption(new Option("random", false, "use random wp-method as equivalence query"));
 		options.addOption(new Option("temp", false, "write partial model into '.model.tmp' file"));
 		options.addOption(new Option("verbose", false, "output verbose information"));
 		options.addOption(new Option("no_cache", false, "don't use cache for membership queries"));
+		options.addOption(new Option("no_test_store", false,
+				"don't check passed equivalence tests again against new hypotheses"));
+		options.addOption(new Option("no_translation_cache", false,
+				"locate every miss of a query again instead of replaying known prefixes"));
+		options.addOption(new Option("prefetch", true,
+				"speculative queries kept waiting while the SUL is idle (default: 0, disabled)"));
+		options.addOption(new Option("cache_size", true,
+				"bound on symbols stored by the membership cache, evicts test words first (default: 0, unbounded)"));
 		options.addOption(new Option("h", "help", false, "show this help message"));
 		options.addOption(new Option("s", "silent", false, "remove stdout info"));
+		// sweep
+		options.addOption(new Option("seed", true, "seed for the random generator (default: random)"));
+		options.addOption(new Option("sweep", true,
+				"run a matrix of experiments, e.g. 'policy=lru,fifo;ways=2,4;learner=kv,ttt;r_bound=200;seed=1,2'"));
+		options.addOption(new Option("sweep_out", true, "write sweep results into .csv or .json file (default: stdout as csv)"));
+		options.addOption(new Option("threads", true, "number of threads used by sweep, identify, sets and serve (default: number of cores)"));
+		options.addOption(new Option("serve", true,
+				"serve learning jobs (regular command lines) on a localhost port, or from *.job files in a spool directory"));
+		// models
+		options.addOption(new Option("compare", true,
+				"compare .dot models instead of learning: 'a.dot,b.dot' or a directory to cluster by behaviour"));
+		options.addOption(new Option("convert", true, "convert a model between .dot and binary .mealy: 'src,dst'"));
+		options.addOption(new Option("sketch", true, "write sketch constraints of the learnt model into file"));
+		options.addOption(new Option("sketch_from", true, "write sketch constraints of a .dot model instead of learning"));
+		options.addOption(new Option("template", true, "sketch template included by constraints (default: 'simple')"));
+		options.addOption(new Option("identify", true, "search age policies (QLRU/RRIP family) matching a .dot model instead of learning"));
+		options.addOption(new Option("age_bits", true, "maximum counter width searched by identify (default: 2)"));
+		// metrics
+		options.addOption(new Option("metrics", true, "write pipeline metrics as json into file"));
+		options.addOption(new Option("jmx", false, "expose pipeline metrics through JMX (net.vwzq.polca:type=Metrics)"));
+		return options;
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		Options options = buildOptions();
 
 		CommandLineParser parser = new DefaultParser();
 		HelpFormatter formatter = new HelpFormatter();
@@ -302,6 +471,114 @@ public final class Polca {
 			System.exit(1);
 		}
 
+		if (cmd.hasOption("jmx")) {
+			Metrics.get().registerJmx();
+		}
+
+		// compare models
+		if (cmd.hasOption("compare")) {
+			try {
+				ModelCompare.run(cmd.getOptionValue("compare"));
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+
+		// convert model formats
+		if (cmd.hasOption("convert")) {
+			String[] paths = cmd.getOptionValue("convert").split(",");
+			try {
+				if (paths.length != 2) throw new IOException("convert expects 'src,dst'");
+				ModelIO.convert(paths[0].trim(), paths[1].trim());
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+
+		// translate model into sketch constraints
+		if (cmd.hasOption("sketch_from")) {
+			try {
+				PrintStream out = cmd.hasOption("sketch") ? new PrintStream(cmd.getOptionValue("sketch")) : System.out;
+				SketchWriter.write(cmd.getOptionValue("sketch_from"), Integer.parseInt(cmd.getOptionValue("ways", "4")),
+						cmd.getOptionValue("template", "simple"), out);
+				out.close();
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+
+		// search policy family for a model
+		if (cmd.hasOption("identify")) {
+			try {
+				int threads = Integer.parseInt(cmd.getOptionValue("threads",
+						Integer.toString(Runtime.getRuntime().availableProcessors())));
+				PolicySearch.run(new Config(cmd), cmd.getOptionValue("identify"),
+						Integer.parseInt(cmd.getOptionValue("age_bits", "2")), threads);
+			} catch (Exception e) {
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+
+		// answer queries of a coordinator
+		if (cmd.hasOption("worker")) {
+			try {
+				new Worker(new Config(cmd)).serve(Integer.parseInt(cmd.getOptionValue("worker")));
+			} catch (Exception e) {
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+
+		// survey cache sets
+		if (cmd.hasOption("sets")) {
+			try {
+				int threads = Integer.parseInt(cmd.getOptionValue("threads",
+						Integer.toString(Runtime.getRuntime().availableProcessors())));
+				new SetSurvey(new Config(cmd), cmd.getOptionValue("sets"), threads).run();
+			} catch (Exception e) {
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			writeMetrics(cmd);
+			return;
+		}
+
+		// serve learning jobs
+		if (cmd.hasOption("serve")) {
+			int threads = Integer.parseInt(cmd.getOptionValue("threads",
+					Integer.toString(Runtime.getRuntime().availableProcessors())));
+			try {
+				new Daemon(options, threads).serve(cmd.getOptionValue("serve"));
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+
+		// run experiment matrix
+		if (cmd.hasOption("sweep")) {
+			try {
+				Sweep sweep = new Sweep(cmd, args, options);
+				sweep.run();
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+				formatter.printHelp("Polca", options);
+				System.exit(1);
+			}
+			writeMetrics(cmd);
+			return;
+		}
+
 		// check config
 		Polca learn = null;
 		try {
@@ -318,82 +595,119 @@ public final class Polca {
 		} catch (Exception e) {
 			throw e;
 		}
+		writeMetrics(cmd);
 
 	}
 
-	public MealyMachine<?, String, ?, String> learnReference() throws Exception {
+	private static void writeMetrics(CommandLine cmd) throws IOException {
+		if (cmd.hasOption("metrics")) {
+			Metrics.get().writeJson(cmd.getOptionValue("metrics"));
+		}
+	}
+
+	public static Alphabet<String> buildAlphabet(int ways) {
 		String[] alphabet1 = {
-				"h(0)", "h(1)", "h(2)", "h(3)", "h(4)", "h(5)", "h(6)", "h(7)", "h(8)",
-				"h(9)", "h(10)", "h(11)", "h(12)", "h(13)", "h(14)", "h(15)", "h(16)", "h(17)",
-				"h(18)", "h(19)", "h(20)", "h(21)", "h(22)", "h(23)", "h(24)", "h(25)", "h(26)",
+			"h(0)", "h(1)", "h(2)", "h(3)", "h(4)", "h(5)", "h(6)", "h(7)", "h(8)",
+			"h(9)", "h(10)", "h(11)", "h(12)", "h(13)", "h(14)", "h(15)", "h(16)", "h(17)",
+			"h(18)", "h(19)", "h(20)", "h(21)", "h(22)", "h(23)", "h(24)", "h(25)", "h(26)",
 		};
-		alphabet1 = Arrays.copyOfRange(alphabet1, 0, this.config.ways + 1);
-		alphabet1[alphabet1.length - 1] = "m()";
-		Alphabet<String> abstractInputAlphabet1 = Alphabets.fromArray(alphabet1);
-		Alphabet<String> alphabet = abstractInputAlphabet1;
+		alphabet1 = Arrays.copyOfRange(alphabet1, 0, ways+1);
+		alphabet1[alphabet1.length-1] = "m()";
+		return Alphabets.fromArray(alphabet1);
+	}
 
-		Random random = new Random();
+	public MealyMachine<?, String, ?, String> learnReference() throws Exception {
+		Alphabet<String> alphabet = buildAlphabet(this.config.ways);
+
+		// seeded as the run itself, so -seed makes reference learning reproducible
+		Random random = this.config.seed != null ? new Random(this.config.seed) : new Random();
 
 		CacheSUL cacheSul = new CacheSUL(this.config, alphabet);
 		CacheSULOracle cacheSulOracle = new CacheSULOracle(cacheSul, this.config, "mq", NoiseType.CLEAN,
 				this.config.probability, random);
 
-		return activeLearning(cacheSulOracle, alphabet, NoiseType.CLEAN, this.config.probability, random, 20000);
+		// reference statistics are not part of the run
+		RunStats stats = this.stats;
+		this.stats = null;
+		try {
+			return activeLearning(new HitFilterOracle(cacheSulOracle), alphabet, NoiseType.CLEAN, this.config.probability,
+					random, 20000);
+		} finally {
+			this.stats = stats;
+		}
 	}
 
-	public void run() throws Exception {
+	public Config getConfig() {
+		return this.config;
+	}
 
-		String[] alphabet1 = {
-			"h(0)", "h(1)", "h(2)", "h(3)", "h(4)", "h(5)", "h(6)", "h(7)", "h(8)",
-			"h(9)", "h(10)", "h(11)", "h(12)", "h(13)", "h(14)", "h(15)", "h(16)", "h(17)",
-			"h(18)", "h(19)", "h(20)", "h(21)", "h(22)", "h(23)", "h(24)", "h(25)", "h(26)",
-		};
-		alphabet1 = Arrays.copyOfRange(alphabet1, 0, this.config.ways+1);
-		alphabet1[alphabet1.length-1] = "m()";
-		Alphabet<String> abstractInputAlphabet1 = Alphabets.fromArray(alphabet1);
-		Alphabet<String> alphabet = abstractInputAlphabet1;
+	public RunStats getStats() {
+		return this.stats;
+	}
+
+	// learn the policy, fills statistics of the run
+	public MealyMachine<?, String, ?, String> learn() throws Exception {
+
+		Alphabet<String> alphabet = buildAlphabet(this.config.ways);
 
 		Random random = new Random();
-		Long seed = random.nextLong();
+		Long seed = this.config.seed != null ? this.config.seed : random.nextLong();
 		random.setSeed(seed);
 
-		CacheSUL cacheSul = new CacheSUL(this.config, alphabet);
-		CacheSULOracle cacheSulOracle = new CacheSULOracle(cacheSul, this.config, "mq", this.config.noise, this.config.probability, random);
-		MealyCounterOracle<String, String> counterOracle = new MealyCounterOracle<>(cacheSulOracle,
+		this.stats = new RunStats(this.config, seed);
+		long start = System.nanoTime();
+
+		// the SUL is local, or behind workers on other hosts
+		RemoteOracle remote = null;
+		CacheSUL cacheSul = null;
+		MealyMembershipOracle<String, String> sulQueries;
+		if (this.config.workers != null) {
+			remote = new RemoteOracle(this.config.workers, this.config.ways);
+			sulQueries = remote;
+		} else {
+			cacheSul = new CacheSUL(this.config, alphabet);
+			sulQueries = new CacheSULOracle(cacheSul, this.config, "mq", this.config.noise, this.config.probability, random);
+		}
+		try {
+			return learn(alphabet, random, seed, start, remote, cacheSul, sulQueries);
+		} finally {
+			if (remote != null) remote.close();
+		}
+	}
+
+	private MealyMachine<?, String, ?, String> learn(Alphabet<String> alphabet, Random random, Long seed, long start,
+			RemoteOracle remote, CacheSUL cacheSul, MealyMembershipOracle<String, String> sulQueries) throws Exception {
+		MealyCounterOracle<String, String> counterOracle = new MealyCounterOracle<>(new MetricsOracle(sulQueries, "sul"),
 				"Membership Queries");
-		// great results with 5 0.7 20
-		// Number of repeats needed grows exponentially(?) with noise removal
-		// percentage.
-		ProbabilisticOracle<String, String> queryOracle = new ProbabilisticOracle<>(counterOracle, 10, 0.7, 20);
-		
+		// all-hit queries are answered before they are repeated
+		MealyMembershipOracle<String, String> queryOracle = new HitFilterOracle(repeatOracle(counterOracle));
+
 		MealyMachine<?, String, ?, String> hyp;
 
-		if (this.config.learner == LearnAlgorithmType.PAS)	{
+		if (this.config.learner == LearnAlgorithmType.PAS && this.config.portfolio == null) {
 			Function<MembershipOracle.MealyMembershipOracle<String, String>, LearningAlgorithm.MealyLearner<String, String>> constructor;
 			constructor = (sulOracle -> new ExtensibleLStarMealy<>(alphabet, sulOracle, Collections.emptyList(),
 					ObservationTableCEXHandlers.RIVEST_SCHAPIRE, ClosingStrategies.CLOSE_SHORTEST));
 
-			System.out.println("# Learning reference...");
-			MealyMachine<?, String, ?, String> reference = learnReference();
-			System.out.println("# Finished learning reference.");
+			if (!this.config.silent) System.out.println("# Loading reference...");
+			MealyMachine<?, String, ?, String> reference = new ReferenceStore(this.config.ref_dir).get(this.config, alphabet,
+					this::learnReference);
+			if (!this.config.silent) System.out.println("# Finished loading reference: " + reference.size() + " states.");
 
 			PAR learn = new PAR(constructor, queryOracle, alphabet, this.config.r_bound, this.config.revision_ratio,
 					this.config.length_factor, false, random, counterOracle.getCounter());
 			List<Pair<Integer, MealyMachine<?, String, ?, String>>> res = learn.run();
 
-			res = toLifetime(res, this.config.r_bound);
+			Lifetimes lifetimes = scoreLifetimes(res, reference, alphabet, this.config.r_bound);
+			res = null;
 
-			Integer correct = 0;
-			for (Pair<Integer, MealyMachine<?, String, ?, String>> pair : res) {
-				if (DeterministicEquivalenceTest.findSeparatingWord(reference, pair.getSecond(), alphabet) == null) {
-					correct += pair.getFirst();
-				}
+			if (!this.config.silent) {
+				System.out.println("# CORRECT RATIO: " + lifetimes.correct + " / " + this.config.r_bound);
+				System.out.println("# SEED: " + seed);
 			}
 
-			System.out.println("# CORRECT RATIO: " + correct + " / " + this.config.r_bound);
-			System.out.println("# SEED: " + seed);
-
-			hyp = res.get(res.size()-1).getSecond();
+			hyp = lifetimes.last;
+			this.stats.mq = counterOracle.getCount();
 		}
 		else 
 			hyp = activeLearning(queryOracle, alphabet, this.config.noise, this.config.probability, random,
@@ -401,6 +715,54 @@ public final class Polca {
 
 		count = counterOracle.getCount();
 
+		this.stats.wall_ms = (System.nanoTime() - start) / 1000000;
+		this.stats.sul_queries = count;
+		this.stats.symbols = remote != null ? remote.getSymbols() : cacheSul.getNumSteps();
+		this.stats.states = hyp.size();
+		if (remote != null && !this.config.silent) System.out.print(remote.summary());
+
+		return hyp;
+	}
+
+	// Repetitions to filter noisy answers: none for clean simulations, adaptive otherwise
+	private MealyMembershipOracle<String, String> repeatOracle(MealyMembershipOracle<String, String> oracle) {
+		return repeatOracle(this.config, oracle);
+	}
+
+	// noisy SULs (hardware, injected noise) answer by repetition
+	static MealyMembershipOracle<String, String> repeatOracle(Config config, MealyMembershipOracle<String, String> oracle) {
+		if (config.mq_legacy != null) {
+			// great results with 5 0.7 20
+			// Number of repeats needed grows exponentially(?) with noise removal
+			// percentage.
+			String[] params = config.mq_legacy.split(",");
+			return new ProbabilisticOracle<>(oracle, Integer.parseInt(params[0].trim()), Double.parseDouble(params[1].trim()),
+					Integer.parseInt(params[2].trim()));
+		}
+		boolean noisy = config.is_hw || (config.noise != null && config.probability > 0);
+		if (!noisy) {
+			return oracle;
+		}
+		return new AdaptiveRepeatOracle(oracle, config.mq_confidence, config.mq_min, config.mq_max);
+	}
+
+	public void run() throws Exception {
+
+		if (this.config.levels != null) {
+			runLevels();
+			return;
+		}
+
+		if (this.config.extrapolate != null) {
+			new Extrapolation(this).run();
+			return;
+		}
+
+		Alphabet<String> alphabet = buildAlphabet(this.config.ways);
+
+		SimpleProfiler.start("learn");
+		MealyMachine<?, String, ?, String> hyp = learn();
+
 		if (this.config.temp_model) {
 			try {
 				PrintStream fileOut = new PrintStream(".model.tmp");
@@ -431,95 +793,303 @@ public final class Polca {
 			if (this.config.output_path.isEmpty()) {
 				Visualization.visualize(hyp, alphabet);
 			} else {
-				PrintStream fileOut = new PrintStream(this.config.output_path);
-				GraphDOT.write(hyp, alphabet, System.out); // may throw IOException!
-				GraphDOT.write(hyp, alphabet, fileOut); // may throw IOException!
+				if (!this.config.silent) GraphDOT.write(hyp, alphabet, System.out);
+				ModelIO.write(hyp, alphabet, this.config.output_path);
 			}
 		}
 
         System.out.println("-------------------------------------------------------");
 
+		if (hyp != null && this.config.sketch_path != null) {
+			try (PrintStream sketchOut = new PrintStream(this.config.sketch_path)) {
+				SketchWriter.write(hyp, alphabet, this.config.ways, this.config.sketch_template, sketchOut);
+			}
+		}
+
     }
 
 
 
-	private List<Pair<Integer, MealyMachine<?, String, ?, String>>> toLifetime(
-			List<Pair<Integer, MealyMachine<?, String, ?, String>>> in, Integer limit) {
-		List<Pair<Integer, MealyMachine<?, String, ?, String>>> out = new LinkedList<>();
-		for (int i = 0; i < in.size(); i++) {
-			int nextLimit = limit;
-			if (i != in.size() - 1) {
-				nextLimit = in.get(i + 1).getFirst();
+	// Learn every level in turn over the same proxy. Each probe is answered
+	// for all levels, so later levels mostly reuse earlier measurements.
+	private void runLevels() throws Exception {
+		Alphabet<String> alphabet = buildAlphabet(this.config.ways);
+		try {
+			for (String level : this.config.levels) {
+				this.config.level = level;
+				long measured = Metrics.get().count("proxy.measurements");
+				long shared = Metrics.get().count("proxy.shared");
+				if (!this.config.silent) System.out.println("# Learning " + level);
+				MealyMachine<?, String, ?, String> hyp = learn();
+				System.out.println(String.format("%s: %d states, %d measurements, %d shared", level, hyp.size(),
+						Metrics.get().count("proxy.measurements") - measured, Metrics.get().count("proxy.shared") - shared));
+				if (this.config.output_path.isEmpty()) {
+					GraphDOT.write(hyp, alphabet, System.out);
+				} else {
+					ModelIO.write(hyp, alphabet, taggedPath(this.config.output_path, level));
+				}
 			}
-
-			out.add(Pair.of(nextLimit - in.get(i).getFirst(), in.get(i).getSecond()));
+		} finally {
+			// the proxy outlives the run with -serve
+			this.config.level = null;
+			HW.Proxy.clearMeasurements(this.config);
 		}
+	}
 
-		return out;
+	// model.dot -> model-l1.dot
+	static String taggedPath(String path, String level) {
+		int dot = path.lastIndexOf('.');
+		String tag = "-" + level.toLowerCase();
+		return dot > path.lastIndexOf('/') ? path.substring(0, dot) + tag + path.substring(dot) : path + tag;
+	}
+
+	static class Lifetimes {
+		public long correct; // queries answered by a correct hypothesis
+		public MealyMachine<?, String, ?, String> last;
+	}
 
+	// The lifetime of a hypothesis lasts until the query of the next one (or the
+	// bound). Walks the hypotheses once, checks them against the reference on a
+	// pool and drops them from the list, so only the checks in flight and the
+	// last model are kept.
+	private Lifetimes scoreLifetimes(List<Pair<Integer, MealyMachine<?, String, ?, String>>> in,
+			MealyMachine<?, String, ?, String> reference, Alphabet<String> alphabet, int limit) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<Integer> completion = new ExecutorCompletionService<>(pool);
+		Lifetimes out = new Lifetimes();
+		int inFlight = 0;
+		try {
+			ListIterator<Pair<Integer, MealyMachine<?, String, ?, String>>> it = in.listIterator();
+			Pair<Integer, MealyMachine<?, String, ?, String>> prev = null;
+			while (true) {
+				Pair<Integer, MealyMachine<?, String, ?, String>> cur = it.hasNext() ? it.next() : null;
+				if (cur != null) {
+					try {
+						it.set(null);
+					} catch (UnsupportedOperationException e) {} // kept by the caller then
+				}
+				if (prev != null) {
+					int lifetime = (cur != null ? cur.getFirst() : limit) - prev.getFirst();
+					MealyMachine<?, String, ?, String> h = prev.getSecond();
+					completion.submit(() -> DeterministicEquivalenceTest.findSeparatingWord(reference, h, alphabet) == null ? lifetime : 0);
+					// bounded, hypotheses wait in the list rather than in the queue
+					if (++inFlight > 2 * threads) {
+						out.correct += completion.take().get();
+						inFlight--;
+					}
+				}
+				if (cur == null) break;
+				prev = cur;
+				out.last = cur.getSecond();
+			}
+			for (; inFlight > 0; inFlight--) {
+				out.correct += completion.take().get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return out;
 	}
 
 	private MealyMachine<?, String, ?, String> activeLearning(MealyMembershipOracle<String, String> queryOracle,
 			Alphabet<String> alphabet, NoiseType noise, float probability, Random random, Integer limit)
 			throws Exception {
 		// instantiate test driver
-        System.out.println("-------------------------------------------------------");
+        if (!this.config.silent) System.out.println("-------------------------------------------------------");
+
+		if (this.config.portfolio != null) {
+			return portfolioLearning(queryOracle, alphabet, random, limit);
+		}
 
 		// Membership Queries
-		MealyCounterOracle<String, String> statsMemOracle = new MealyCounterOracle<String, String>(queryOracle, "membership queries");
-		MealyCacheOracle<String, String> cachedMemOracle = MealyCaches.createDAGCache(alphabet, statsMemOracle);
+		// speculation fills the gaps while the learner computes, its queries are not counted
+		this.prefetch = this.config.prefetch > 0 ? new PrefetchOracle(queryOracle, alphabet, this.config.prefetch) : null;
+		MealyCounterOracle<String, String> statsMemOracle = new MealyCounterOracle<String, String>(
+				this.prefetch != null ? this.prefetch : queryOracle, "membership queries");
+		MetricsOracle missMemOracle = new MetricsOracle(statsMemOracle, "cache.miss");
+		MembershipOracle.MealyMembershipOracle<String, String> cachedMemOracle;
+		MembershipOracle.MealyMembershipOracle<String, String> testMemOracle;
+		BoundedCacheOracle boundedCache = null;
+		if (this.config.cache_size > 0) {
+			boundedCache = new BoundedCacheOracle(missMemOracle, this.config.cache_size);
+			cachedMemOracle = boundedCache;
+		} else {
+			cachedMemOracle = MealyCaches.createDAGCache(alphabet, missMemOracle);
+		}
 		MealyCounterOracle<String, String> statsCachedMemOracle = new MealyCounterOracle<String, String>(cachedMemOracle, "membership queries hit cache");
 		MembershipOracle.MealyMembershipOracle<String, String> effMemOracle = this.config.no_cache ? statsMemOracle : statsCachedMemOracle;
+		// equivalence words go through the test view of the bounded cache, so they are evicted first
+		testMemOracle = (boundedCache != null && !this.config.no_cache) ? boundedCache.asTestOracle() : effMemOracle;
 
-		
-		LearningAlgorithm.MealyLearner<String,String> learn;
-		switch (this.config.learner) {
+		MealyCounterOracle<String, String> statsLearnerOracle = new MealyCounterOracle<String, String>(new MetricsOracle(effMemOracle, "learner"), "learner queries");
+		MealyCounterOracle<String, String> statsTestOracle = new MealyCounterOracle<String, String>(new MetricsOracle(testMemOracle, "equivalence"), "equivalence queries");
+		registerCacheGauge();
+
+		LearningAlgorithm.MealyLearner<String,String> learn = createLearner(this.config.learner, alphabet, statsLearnerOracle);
+
+		// Main learning loop
+		MealyMachine<?, String, ?, String> hyp;
+		try {
+			hyp = learningLoop(learn, statsTestOracle, alphabet, random, limit, "");
+		} finally {
+			if (this.prefetch != null) this.prefetch.close();
+			this.prefetch = null;
+		}
+
+		if (this.stats != null) {
+			this.stats.mq = statsLearnerOracle.getCount();
+			this.stats.eq = statsTestOracle.getCount();
+			this.stats.cache_hits = this.config.no_cache ? 0 : this.stats.mq + this.stats.eq - statsMemOracle.getCount();
+		}
+		if (!this.config.silent) System.out.println("Reference queries: " + (statsMemOracle.getCount() * this.config.repetitions));
+		if (!this.config.silent && boundedCache != null && !this.config.no_cache) System.out.println(boundedCache.getStatistics());
+		return hyp;
+	}
+
+	// Run several learners concurrently over one shared cache, first hypothesis passing
+	// the equivalence test wins and the rest are cancelled
+	private MealyMachine<?, String, ?, String> portfolioLearning(MealyMembershipOracle<String, String> queryOracle,
+			Alphabet<String> alphabet, Random random, Integer limit) throws Exception {
+		MealyCounterOracle<String, String> statsMemOracle = new MealyCounterOracle<String, String>(queryOracle, "membership queries");
+		// the SUL is sequential anyway, serialize access to the oracle chain below the cache
+		MealyMembershipOracle<String, String> syncMemOracle = queries -> {
+			synchronized (statsMemOracle) {
+				statsMemOracle.processQueries(queries);
+			}
+		};
+		BoundedCacheOracle sharedCache = new BoundedCacheOracle(new MetricsOracle(syncMemOracle, "cache.miss"), this.config.cache_size);
+		registerCacheGauge();
+		AtomicBoolean done = new AtomicBoolean(false);
+		// learner and equivalence queries of all learners, as in activeLearning
+		LongAdder learnerQueries = new LongAdder();
+		LongAdder testQueries = new LongAdder();
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.config.portfolio.size());
+		CompletionService<Pair<LearnAlgorithmType, MealyMachine<?, String, ?, String>>> completion = new ExecutorCompletionService<>(pool);
+		for (LearnAlgorithmType type : this.config.portfolio) {
+			// abort losing learners on their next query
+			MealyMembershipOracle<String, String> memOracle = queries -> {
+				if (done.get()) throw new CancellationException();
+				learnerQueries.add(queries.size());
+				sharedCache.processQueries(queries);
+			};
+			MealyMembershipOracle<String, String> testOracle = queries -> {
+				if (done.get()) throw new CancellationException();
+				testQueries.add(queries.size());
+				sharedCache.asTestOracle().processQueries(queries);
+			};
+			Random learnerRandom = new Random(random.nextLong());
+			completion.submit(Metrics.bind(() -> {
+				LearningAlgorithm.MealyLearner<String, String> learn = createLearner(type, alphabet, new MetricsOracle(memOracle, "learner"));
+				return Pair.of(type, learningLoop(learn, new MetricsOracle(testOracle, "equivalence"), alphabet, learnerRandom, limit,
+						"[" + type.toString().toLowerCase() + "] "));
+			}));
+		}
+
+		Pair<LearnAlgorithmType, MealyMachine<?, String, ?, String>> winner = null;
+		try {
+			for (int i = 0; i < this.config.portfolio.size() && winner == null; i++) {
+				try {
+					winner = completion.take().get();
+				} catch (ExecutionException e) {
+					System.err.println("Portfolio learner failed: " + e.getCause());
+				}
+			}
+		} finally {
+			done.set(true);
+			pool.shutdownNow();
+		}
+		if (winner == null) {
+			throw new Exception("all portfolio learners failed");
+		}
+
+		if (this.stats != null) {
+			this.stats.mq = learnerQueries.sum();
+			this.stats.eq = testQueries.sum();
+			this.stats.cache_hits = sharedCache.getHits();
+		}
+		if (!this.config.silent) {
+			System.out.println("Portfolio winner: " + winner.getFirst().toString().toLowerCase());
+			System.out.println("Reference queries: " + (statsMemOracle.getCount() * this.config.repetitions));
+			System.out.println(sharedCache.getStatistics());
+		}
+		return winner.getSecond();
+	}
+
+	// ratio of learner and equivalence queries answered by the membership cache
+	private static void registerCacheGauge() {
+		Metrics metrics = Metrics.get();
+		metrics.gauge("cache.hit_ratio", () -> {
+			long total = metrics.count("learner.queries") + metrics.count("equivalence.queries");
+			return total == 0 ? 0 : 1.0 - (double) metrics.count("cache.miss.queries") / total;
+		});
+	}
+
+	private LearningAlgorithm.MealyLearner<String, String> createLearner(LearnAlgorithmType type, Alphabet<String> alphabet,
+			MealyMembershipOracle<String, String> effMemOracle) {
+		switch (type) {
 			case TTT:
-				learn = new TTTLearnerMealyBuilder<String, String>().withAlphabet(alphabet).withOracle(effMemOracle).withAnalyzer(AcexAnalyzers.LINEAR_FWD).create();
-				break;
+				return new TTTLearnerMealyBuilder<String, String>().withAlphabet(alphabet).withOracle(effMemOracle).withAnalyzer(AcexAnalyzers.LINEAR_FWD).create();
 			case DHC:
-				learn = new MealyDHC<String, String>(alphabet, effMemOracle);
-				break;
+				return new MealyDHC<String, String>(alphabet, effMemOracle);
 			case KV:
-				learn = new KearnsVaziraniMealy<String, String>(alphabet, effMemOracle, true, AcexAnalyzers.LINEAR_FWD);
-				break;
+				return new KearnsVaziraniMealy<String, String>(alphabet, effMemOracle, true, AcexAnalyzers.LINEAR_FWD);
 			case MP:
-				learn = new MalerPnueliMealy<String, String>(alphabet, effMemOracle);
-				break;
+				return new MalerPnueliMealy<String, String>(alphabet, effMemOracle);
 			case RS:
-				learn = new RivestSchapireMealy<String, String>(alphabet, effMemOracle);
-				break;
+				return new RivestSchapireMealy<String, String>(alphabet, effMemOracle);
 			case DT:
-				learn = new DTLearnerMealy<String, String>(alphabet, effMemOracle, LocalSuffixFinders.RIVEST_SCHAPIRE, true);
-				break;
+				return new DTLearnerMealy<String, String>(alphabet, effMemOracle, LocalSuffixFinders.RIVEST_SCHAPIRE, true);
 			case LSTAR:
 			default:
-				learn = new ExtensibleLStarMealyBuilder<String,String>().withAlphabet(alphabet).withOracle(effMemOracle).create();
-			break;
-		
+				return new ExtensibleLStarMealyBuilder<String,String>().withAlphabet(alphabet).withOracle(effMemOracle).create();
 		}
+	}
 
+	private MealyMachine<?, String, ?, String> learningLoop(LearningAlgorithm.MealyLearner<String, String> learn,
+			MealyMembershipOracle<String, String> testMemOracle, Alphabet<String> alphabet, Random random, Integer limit,
+			String tag) {
 		MealyMachine<?, String, ?, String> hyp = null;
 		DefaultQuery<String, Word<String>> ce = null;
+		int round = 0;
+		List<WordGenerator> generators = null;
+		// passed tests are checked again in memory against every new hypothesis
+		TestStore store = null;
+		if (!this.config.no_test_store) {
+			store = new TestStore(testMemOracle);
+			testMemOracle = store;
+		}
+		boolean fromStore = false;
+		if (this.config.r_rand != null) {
+			try {
+				generators = WordGenerator.create(this.config.r_rand, this.config, random);
+			} catch (Exception e) {
+				throw new IllegalArgumentException(e.getMessage());
+			}
+		}
 
-		// Main learning loop
-		SimpleProfiler.start("learn");
 		do {
+			long start = System.nanoTime();
 			if (ce == null) {
 				learn.startLearning();
 			} else {
 				boolean refined = learn.refineHypothesis(ce);
 				if (!refined) {
-					System.err.println("No refinement effected by counterexample!");
+					System.err.println(tag + "No refinement effected by counterexample!");
+					if (fromStore) store.forget(ce.getInput());
 				}
 			}
 
 			hyp = learn.getHypothesisModel();
-			if (!this.config.silent) System.out.println("--> Hypothesis: " + hyp.getStates() + " - " + hyp.size());
+			if (this.prefetch != null) this.prefetch.setHypothesis(hyp);
+			long learnTime = System.nanoTime() - start;
+			if (!this.config.silent) System.out.println(tag + "--> Hypothesis: " + hyp.getStates() + " - " + hyp.size());
 			// update depth with patch from: https://github.com/LearnLib/automatalib/issues/32
 
 			// if reach max size, we can skip comformance testing (learning is sound refinement)
 			if (hyp.size() >= this.config.max_size) {
+				Metrics.get().round(tag.trim(), round++, hyp.size(), learnTime, 0);
 				break;
 			}
 
@@ -532,16 +1102,25 @@ public final class Polca {
 				}
 			}
 
-			MealyEquivalenceOracle<String, String> eqOracle = new MealyRandomWordsEQOracle<>(effMemOracle,
-					this.config.r_min, this.config.r_len, limit);
-			ce = eqOracle.findCounterExample(hyp, alphabet);
+			MealyEquivalenceOracle<String, String> eqOracle = generators != null
+					? new GeneratorEQOracle(testMemOracle, generators, alphabet, limit)
+					: new MealyRandomWordsEQOracle<>(testMemOracle, this.config.r_min, this.config.r_len, limit, random);
+			start = System.nanoTime();
+			ce = store != null ? store.findCounterExample(hyp) : null;
+			fromStore = ce != null;
+			if (ce == null) {
+				ce = eqOracle.findCounterExample(hyp, alphabet);
+			}
+			Metrics.get().round(tag.trim(), round++, hyp.size(), learnTime, System.nanoTime() - start);
 
-			if (!this.config.silent) System.out.println("ce : " + ce);
+			if (!this.config.silent) System.out.println(tag + "ce : " + ce + (fromStore ? " (stored test)" : ""));
 
 		} while (ce != null);
 
-		System.out.println("Reference queries: " + (statsMemOracle.getCount() * this.config.repetitions));
+		if (generators != null && !this.config.silent) {
+			System.out.println(tag + "counterexample yield:");
+			GeneratorEQOracle.report(generators);
+		}
 		return hyp;
 	}
 }
-
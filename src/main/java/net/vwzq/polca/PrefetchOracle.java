@@ -0,0 +1,183 @@
+package net.vwzq.polca;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.api.query.Query;
+import net.automatalib.automata.transducers.MealyMachine;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+
+// Speculative prefetching below the query cache (-prefetch n). While the
+// learner computes, a background thread asks the SUL for queries it will
+// likely need: one symbol extensions of the last queries, and of the access
+// sequences of each new hypothesis. Answers are kept until the learner asks
+// for them, results are cached above. Foreground queries go first,
+// speculation only runs while they are idle, at most 'n' predictions wait and
+// at most ANSWERS * n answers are kept, the oldest are dropped.
+class PrefetchOracle implements MealyMembershipOracle<String, String> {
+
+	private final MealyMembershipOracle<String, String> delegate;
+	private final Alphabet<String> alphabet;
+	private final int budget;
+	private static final int ANSWERS = 4;
+	private final Map<Word<String>, Word<String>> answers;
+	private final Set<Word<String>> speculative = new HashSet<Word<String>>();
+	private final Deque<Word<String>> pending = new ArrayDeque<Word<String>>();
+	private final Set<Word<String>> queued = new HashSet<Word<String>>();
+	private final AtomicInteger foreground = new AtomicInteger();
+	private final Object sul = new Object(); // the delegate is not thread safe
+	private final LongAdder issued, hits;
+	private final Thread worker;
+	private volatile boolean closed = false;
+
+	public PrefetchOracle(MealyMembershipOracle<String, String> delegate, Alphabet<String> alphabet, int budget) {
+		this.delegate = delegate;
+		this.alphabet = alphabet;
+		this.budget = budget;
+		// recent foreground words too, so that they are not speculated again
+		this.answers = new LinkedHashMap<Word<String>, Word<String>>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Word<String>, Word<String>> eldest) {
+				if (size() <= ANSWERS * budget) return false;
+				speculative.remove(eldest.getKey());
+				return true;
+			}
+		};
+		this.issued = Metrics.get().counter("prefetch.issued");
+		this.hits = Metrics.get().counter("prefetch.hits");
+		Metrics.get().gauge("prefetch.wasted", () -> this.issued.sum() - this.hits.sum());
+		this.worker = new Thread(Metrics.bind(this::speculate), "prefetch");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
+		this.foreground.incrementAndGet();
+		try {
+			List<Query<String, Word<String>>> misses = new ArrayList<Query<String, Word<String>>>();
+			synchronized (this) {
+				for (Query<String, Word<String>> q : queries) {
+					Word<String> out = lookup(q.getInput());
+					if (out != null) {
+						q.answer(out.suffix(q.getSuffix().length()));
+					} else {
+						misses.add(q);
+					}
+				}
+			}
+			if (!misses.isEmpty()) {
+				List<DefaultQuery<String, Word<String>>> full = new ArrayList<DefaultQuery<String, Word<String>>>();
+				for (Query<String, Word<String>> q : misses) {
+					full.add(new DefaultQuery<String, Word<String>>(Word.epsilon(), q.getInput(), null));
+				}
+				synchronized (this.sul) {
+					this.delegate.processQueries(full);
+				}
+				synchronized (this) {
+					for (int i = 0; i < misses.size(); i++) {
+						Word<String> out = full.get(i).getOutput();
+						store(full.get(i).getInput(), out, false);
+						misses.get(i).answer(out.suffix(misses.get(i).getSuffix().length()));
+					}
+				}
+			}
+			synchronized (this) {
+				for (Query<String, Word<String>> q : queries) {
+					predictExtensions(q.getInput());
+				}
+				this.notifyAll();
+			}
+		} finally {
+			this.foreground.decrementAndGet();
+		}
+	}
+
+	// called by the learning loop for every new hypothesis
+	public void setHypothesis(MealyMachine<?, String, ?, String> hyp) {
+		List<Word<String>> access = ModelIO.accessSequences(ModelIO.toCompact(hyp, this.alphabet));
+		synchronized (this) {
+			for (Word<String> u : access) {
+				predictExtensions(u);
+			}
+			this.notifyAll();
+		}
+	}
+
+	public void close() {
+		this.closed = true;
+		this.worker.interrupt();
+	}
+
+	private Word<String> lookup(Word<String> input) {
+		Word<String> out = this.answers.get(input);
+		if (out != null && this.speculative.remove(input)) {
+			// served once, the cache above keeps it from now on
+			this.answers.remove(input);
+			this.hits.increment();
+		}
+		return out;
+	}
+
+	private void store(Word<String> input, Word<String> output, boolean spec) {
+		this.answers.put(input, output);
+		if (spec) this.speculative.add(input);
+	}
+
+	private void predictExtensions(Word<String> w) {
+		for (String a : this.alphabet) {
+			Word<String> next = w.append(a);
+			if (this.answers.containsKey(next) || !this.queued.add(next)) continue;
+			if (this.pending.size() >= this.budget) this.queued.remove(this.pending.pollFirst());
+			this.pending.addLast(next);
+		}
+	}
+
+	private void speculate() {
+		while (!this.closed) {
+			Word<String> next;
+			synchronized (this) {
+				try {
+					while (!this.closed && (this.pending.isEmpty() || this.foreground.get() > 0)) {
+						this.wait(10);
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (this.closed) return;
+				// newest predictions are the most likely
+				next = this.pending.pollLast();
+				this.queued.remove(next);
+				if (this.answers.containsKey(next)) continue;
+			}
+			DefaultQuery<String, Word<String>> q = new DefaultQuery<String, Word<String>>(Word.epsilon(), next, null);
+			try {
+				synchronized (this.sul) {
+					this.delegate.processQueries(Collections.singletonList(q));
+				}
+			} catch (RuntimeException e) {
+				continue; // e.g. proxy errors, the learner will ask again
+			}
+			this.issued.increment();
+			synchronized (this) {
+				store(next, q.getOutput(), true);
+			}
+		}
+	}
+
+}
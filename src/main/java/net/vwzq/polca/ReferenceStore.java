@@ -0,0 +1,69 @@
+package net.vwzq.polca;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+
+import net.automatalib.automata.transducers.MealyMachine;
+import net.automatalib.automata.transducers.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+
+// Reference models stored on disk, addressed by the hash of policy, ways and prefix
+// (and of the program's content for sketches, so that edits aren't served stale).
+// Simulated policies are explored directly, hardware is learnt once and reused.
+class ReferenceStore {
+
+	private final String dir;
+
+	public ReferenceStore(String dir) {
+		this.dir = dir;
+	}
+
+	public static String key(Config config) throws Exception {
+		String id = "policy=" + config.policy.toString().toLowerCase() + ";ways=" + config.ways + ";prefix=" + config.prefix
+				+ (config.is_hw ? ";proxy=" + config.proxy_path : "")
+				+ (config.level != null ? ";level=" + config.level : "")
+				+ (config.policy == PolicyType.SKETCH ? ";program=" + sha256(Files.readAllBytes(Paths.get(config.sketch_policy))) : "")
+				+ (config.policy == PolicyType.AGE ? ";age=" + config.age_spec : "");
+		return sha256(id.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String sha256(byte[] data) throws Exception {
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		StringBuilder sb = new StringBuilder();
+		for (byte b : md.digest(data)) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	public MealyMachine<?, String, ?, String> get(Config config, Alphabet<String> alphabet,
+			Callable<MealyMachine<?, String, ?, String>> learner) throws Exception {
+		File file = new File(this.dir, key(config) + ModelIO.BINARY_EXT);
+		if (file.exists()) {
+			CompactMealy<String, String> model = ModelIO.readBinary(file.getPath());
+			if (model.getInputAlphabet().size() == alphabet.size()) {
+				return model;
+			}
+		}
+
+		MealyMachine<?, String, ?, String> model;
+		if (config.is_hw) {
+			model = learner.call();
+		} else {
+			model = new PolicyExplorer(config, alphabet).explore();
+		}
+
+		// write into temporary file first, concurrent runs may compute the same reference
+		file.getParentFile().mkdirs();
+		File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+		ModelIO.writeBinary(model, alphabet, tmp.getPath());
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return model;
+	}
+
+}
@@ -0,0 +1,224 @@
+package net.vwzq.polca;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.Query;
+import net.automatalib.words.Word;
+
+// Membership queries answered by workers (-workers host:port,host:port), see
+// Worker. A batch is split into chunks that workers take while they are free,
+// each chunk sized to about CHUNK_MS of the worker's measured latency, so fast
+// workers answer more. Chunks of a lost worker go back to the others, lost
+// workers are contacted again after RECONNECT_MS. Results are cached above,
+// by the regular query caches.
+class RemoteOracle implements MealyMembershipOracle<String, String> {
+
+	static class Remote {
+		public final String address;
+		public Socket socket;
+		public BufferedReader in;
+		public PrintWriter out;
+		public double msPerQuery = 10; // moving average, until measured
+		public long answered = 0;
+		public long lostAt = 0;
+
+		public Remote(String address) {
+			this.address = address;
+		}
+
+		public boolean isConnected() {
+			return this.socket != null;
+		}
+
+		public void close() {
+			if (this.socket != null) {
+				try {
+					this.socket.close();
+				} catch (IOException e) {}
+				this.lostAt = System.currentTimeMillis();
+			}
+			this.socket = null;
+		}
+	}
+
+	private static final int CONNECT_TIMEOUT_MS = 5000;
+	private static final int READ_TIMEOUT_MS = 600000;
+	private static final double CHUNK_MS = 200;
+	private static final long RECONNECT_MS = 30000;
+
+	private final int ways;
+	private final List<Remote> remotes = new ArrayList<Remote>();
+	private final ExecutorService pool;
+	private final LongAdder symbols = new LongAdder();
+
+	public RemoteOracle(String spec, int ways) throws IOException {
+		this.ways = ways;
+		for (String address : spec.split(",")) {
+			this.remotes.add(new Remote(address.trim()));
+		}
+		this.pool = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "remote");
+			t.setDaemon(true);
+			return t;
+		});
+		if (connectAll() == 0) throw new IOException("no worker reachable: " + spec);
+	}
+
+	// symbols sent to the workers
+	public long getSymbols() {
+		return this.symbols.sum();
+	}
+
+	private int connectAll() {
+		int alive = 0;
+		for (Remote r : this.remotes) {
+			boolean retry = System.currentTimeMillis() - r.lostAt >= RECONNECT_MS;
+			if (r.isConnected() || (retry && connect(r))) alive++;
+		}
+		return alive;
+	}
+
+	private boolean connect(Remote r) {
+		int colon = r.address.lastIndexOf(':');
+		try {
+			if (colon < 0) throw new IOException("expected host:port");
+			Socket socket = new Socket();
+			socket.connect(new InetSocketAddress(r.address.substring(0, colon), Integer.parseInt(r.address.substring(colon + 1))),
+					CONNECT_TIMEOUT_MS);
+			socket.setSoTimeout(READ_TIMEOUT_MS);
+			socket.setTcpNoDelay(true);
+			r.socket = socket;
+			r.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			r.out = new PrintWriter(socket.getOutputStream(), true);
+			String hello = r.in.readLine();
+			if (hello == null || !hello.equals("polca-worker " + this.ways)) {
+				throw new IOException("not a worker for " + this.ways + " ways: " + hello);
+			}
+			return true;
+		} catch (IOException | NumberFormatException e) {
+			System.err.println("remote: " + r.address + ": " + e.getMessage());
+			r.close();
+			r.lostAt = System.currentTimeMillis();
+			return false;
+		}
+	}
+
+	// one batch at a time, connections are not shared
+	@Override
+	public synchronized void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
+		Deque<Query<String, Word<String>>> todo = new ArrayDeque<Query<String, Word<String>>>(queries);
+		while (!todo.isEmpty()) {
+			List<Future<?>> running = new ArrayList<Future<?>>();
+			for (Remote r : this.remotes) {
+				if (r.isConnected()) running.add(this.pool.submit(Metrics.bind(() -> drain(r, todo))));
+			}
+			if (running.isEmpty()) throw new RuntimeException("all workers lost");
+			for (Future<?> f : running) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+					throw new RuntimeException(e.getCause());
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			// chunks of lost workers are left, ask the others (or reconnected ones)
+			if (!todo.isEmpty()) connectAll();
+		}
+	}
+
+	private void drain(Remote r, Deque<Query<String, Word<String>>> todo) {
+		while (true) {
+			List<Query<String, Word<String>>> chunk = new ArrayList<Query<String, Word<String>>>();
+			synchronized (todo) {
+				int size = (int) Math.max(1, Math.round(CHUNK_MS / r.msPerQuery));
+				while (chunk.size() < size && !todo.isEmpty()) {
+					chunk.add(todo.poll());
+				}
+			}
+			if (chunk.isEmpty()) return;
+			try {
+				send(r, chunk);
+			} catch (IOException e) {
+				System.err.println("remote: lost " + r.address + ": " + e.getMessage());
+				Metrics.get().counter("remote.lost").increment();
+				Metrics.get().counter("remote.retries").add(chunk.size());
+				r.close();
+				synchronized (todo) {
+					todo.addAll(chunk);
+				}
+				return;
+			}
+		}
+	}
+
+	// the chunk is pipelined, answers come in order
+	private void send(Remote r, List<Query<String, Word<String>>> chunk) throws IOException {
+		long start = System.nanoTime();
+		for (Query<String, Word<String>> q : chunk) {
+			r.out.print("q " + String.join(" ", q.getPrefix().asList()) + " | " + String.join(" ", q.getSuffix().asList()) + "\n");
+		}
+		r.out.flush();
+		List<Word<String>> answers = new ArrayList<Word<String>>(chunk.size());
+		String error = null;
+		for (Query<String, Word<String>> q : chunk) {
+			String line = r.in.readLine();
+			if (line == null) throw new IOException("end of stream");
+			if (line.startsWith("e ")) {
+				// the SUL failed on this query, as it would locally
+				if (error == null) error = line.substring(2);
+				continue;
+			}
+			Word<String> out = Worker.parse(line.length() > 2 ? line.substring(2) : "");
+			if (out.length() != q.getSuffix().length()) throw new IOException("bad answer: " + line);
+			answers.add(out);
+		}
+		if (error != null) throw new RuntimeException(r.address + ": " + error);
+		// answer only complete chunks, a retried chunk is answered once
+		for (int i = 0; i < chunk.size(); i++) {
+			chunk.get(i).answer(answers.get(i));
+			this.symbols.add(chunk.get(i).getInput().length());
+		}
+		long elapsed = System.nanoTime() - start;
+		r.msPerQuery = 0.7 * r.msPerQuery + 0.3 * (elapsed / 1e6 / chunk.size());
+		r.answered += chunk.size();
+		Metrics.get().histogram("remote.roundtrip").record(elapsed);
+		Metrics.get().counter("remote.queries").add(chunk.size());
+	}
+
+	public void close() {
+		for (Remote r : this.remotes) {
+			if (r.isConnected()) r.out.println("quit");
+			r.close();
+		}
+		this.pool.shutdownNow();
+	}
+
+	public String summary() {
+		StringBuilder sb = new StringBuilder();
+		for (Remote r : this.remotes) {
+			sb.append(String.format("%s: %d queries, %.2f ms/query%s%n", r.address, r.answered, r.msPerQuery,
+					r.isConnected() ? "" : " (lost)"));
+		}
+		return sb.toString();
+	}
+
+}
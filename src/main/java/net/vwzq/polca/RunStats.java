@@ -0,0 +1,97 @@
+package net.vwzq.polca;
+
+// Statistics of a single learning run, one row in sweep results
+class RunStats {
+
+	public static final String[] COLUMNS = {
+		"policy", "ways", "learner", "r_bound", "seed", "wall_ms", "mq", "eq", "sul_queries", "symbols",
+		"cache_hits", "states", "error",
+	};
+
+	public String policy;
+	public int ways;
+	public String learner;
+	public int r_bound;
+	public long seed;
+	public long wall_ms;
+	public long mq, eq;
+	public long sul_queries;
+	public long symbols;
+	public long cache_hits;
+	public int states;
+	public String error;
+
+	public RunStats(Config config, long seed) {
+		this.policy = config.policy.toString().toLowerCase();
+		this.ways = config.ways;
+		this.learner = config.portfolio != null ? "portfolio" : config.learner.toString().toLowerCase();
+		this.r_bound = config.r_bound;
+		this.seed = seed;
+		this.error = "";
+	}
+
+	// row of a run that failed before it was configured
+	public RunStats(String error) {
+		this.policy = "";
+		this.learner = "";
+		this.error = error;
+	}
+
+	private Object[] values() {
+		return new Object[] {
+			policy, ways, learner, r_bound, seed, wall_ms, mq, eq, sul_queries, symbols, cache_hits, states, error,
+		};
+	}
+
+	public static String csvHeader() {
+		return String.join(",", COLUMNS);
+	}
+
+	public String toCsv() {
+		StringBuilder sb = new StringBuilder();
+		Object[] values = values();
+		for (int i = 0; i < values.length; i++) {
+			Object v = values[i];
+			if (i > 0) sb.append(",");
+			String str = v.toString();
+			if (str.contains(",") || str.contains("\"") || str.contains("\n") || str.contains("\r")) {
+				str = "\"" + str.replace("\"", "\"\"") + "\"";
+			}
+			sb.append(str);
+		}
+		return sb.toString();
+	}
+
+	public String toJson() {
+		StringBuilder sb = new StringBuilder("{");
+		Object[] values = values();
+		for (int i = 0; i < COLUMNS.length; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append("\"").append(COLUMNS[i]).append("\": ");
+			if (values[i] instanceof String) {
+				sb.append("\"").append(escape((String) values[i])).append("\"");
+			} else {
+				sb.append(values[i]);
+			}
+		}
+		return sb.append("}").toString();
+	}
+
+	private static String escape(String str) {
+		StringBuilder sb = new StringBuilder();
+		for (char c : str.toCharArray()) {
+			switch (c) {
+				case '\\': sb.append("\\\\"); break;
+				case '"': sb.append("\\\""); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+					else sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,175 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import net.automatalib.automata.transducers.MealyMachine;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+// Surveys many cache sets (-sets 0-63), e.g. to find the leader sets of
+// set dueling. Every set gets its own proxy, with '{set}' in the proxy command
+// replaced by the set. All sets answer the same short experiments in
+// parallel, sets answering alike form a group, and only the first set of each
+// group is learnt. Prints the set -> model map, with -o each group's model is
+// written to model-set<first>.dot.
+class SetSurvey {
+
+	static class Group {
+		public final List<Integer> sets = new ArrayList<Integer>();
+		public MealyMachine<?, String, ?, String> model;
+		public String error;
+	}
+
+	private static final int EXPERIMENTS = 16;
+
+	private final Config config;
+	private final List<Integer> sets;
+	private final int threads;
+	private final Alphabet<String> alphabet;
+
+	public SetSurvey(Config config, String spec, int threads) throws Exception {
+		this.config = config;
+		this.sets = parseSets(spec);
+		this.threads = Math.max(1, Math.min(threads, this.sets.size()));
+		this.alphabet = Polca.buildAlphabet(config.ways);
+		if (config.is_hw && !config.proxy_path.contains("{set}")) {
+			throw new Exception("-sets needs '{set}' in the proxy command");
+		}
+	}
+
+	// '0-3,8' -> [0, 1, 2, 3, 8]
+	public static List<Integer> parseSets(String spec) throws Exception {
+		List<Integer> out = new ArrayList<Integer>();
+		for (String s : spec.split(",")) {
+			String[] range = s.trim().split("-");
+			int from = Integer.parseInt(range[0].trim());
+			int to = range.length > 1 ? Integer.parseInt(range[1].trim()) : from;
+			if (range.length > 2 || to < from) throw new Exception("bad set range: " + s);
+			for (int i = from; i <= to; i++) {
+				out.add(i);
+			}
+		}
+		return out;
+	}
+
+	private Config forSet(int set) {
+		Config config = this.config.copy();
+		config.proxy_path = this.config.proxy_path.replace("{set}", Integer.toString(set));
+		config.silent = true;
+		config.verbose = false;
+		return config;
+	}
+
+	// same words for every set: random hits and misses, longer than the ways
+	private List<Word<String>> experiments() {
+		Random random = new Random(this.config.seed != null ? this.config.seed : 0);
+		int ways = this.config.ways;
+		String miss = this.alphabet.getSymbol(ways);
+		List<Word<String>> out = new ArrayList<Word<String>>();
+		for (int n = 0; n < EXPERIMENTS; n++) {
+			int len = ways + random.nextInt(2 * ways + 1);
+			WordBuilder<String> wb = new WordBuilder<>(len);
+			for (int i = 0; i < len; i++) {
+				wb.add(random.nextBoolean() ? miss : this.alphabet.getSymbol(random.nextInt(ways)));
+			}
+			out.add(wb.toWord());
+		}
+		return out;
+	}
+
+	private List<Word<String>> fingerprint(int set, List<Word<String>> experiments) throws Exception {
+		Config config = forSet(set);
+		Random random = new Random(config.seed != null ? config.seed + set : set);
+		// asked as in learn(), one noisy answer must not split a group
+		MealyMembershipOracle<String, String> sul = new HitFilterOracle(Polca.repeatOracle(config,
+				new CacheSULOracle(new CacheSUL(config, this.alphabet), config, "sets", config.noise, config.probability, random)));
+		List<DefaultQuery<String, Word<String>>> queries = new ArrayList<DefaultQuery<String, Word<String>>>();
+		for (Word<String> w : experiments) {
+			queries.add(new DefaultQuery<String, Word<String>>(Word.epsilon(), w, null));
+		}
+		sul.processQueries(queries);
+		List<Word<String>> out = new ArrayList<Word<String>>();
+		for (DefaultQuery<String, Word<String>> q : queries) {
+			out.add(q.getOutput());
+		}
+		Metrics.get().counter("sets.fingerprints").increment();
+		return out;
+	}
+
+	public Map<Integer, Group> run() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		try {
+			// fingerprint all sets at once
+			List<Word<String>> experiments = experiments();
+			List<Future<List<Word<String>>>> prints = new ArrayList<Future<List<Word<String>>>>();
+			for (int set : this.sets) {
+				prints.add(pool.submit(() -> Metrics.run(() -> fingerprint(set, experiments))));
+			}
+			Map<List<Word<String>>, Group> groups = new LinkedHashMap<List<Word<String>>, Group>();
+			for (int i = 0; i < this.sets.size(); i++) {
+				groups.computeIfAbsent(prints.get(i).get(), k -> new Group()).sets.add(this.sets.get(i));
+			}
+			System.out.println(String.format("%d sets, %d groups", this.sets.size(), groups.size()));
+
+			// learn one set of each group
+			List<Future<?>> learning = new ArrayList<Future<?>>();
+			for (Group g : groups.values()) {
+				learning.add(pool.submit(() -> {
+					try {
+						g.model = Metrics.run(() -> new Polca(forSet(g.sets.get(0))).learn());
+						if (g.model == null) g.error = "no model learnt";
+					} catch (Exception e) {
+						g.error = e.getMessage() != null ? e.getMessage() : e.toString();
+					}
+				}));
+			}
+			for (Future<?> f : learning) {
+				f.get();
+			}
+
+			Map<Integer, Group> map = new LinkedHashMap<Integer, Group>();
+			for (Group g : groups.values()) {
+				int first = g.sets.get(0);
+				String path = this.config.output_path.isEmpty() ? null : Polca.taggedPath(this.config.output_path, "set" + first);
+				if (g.model != null && path != null) {
+					ModelIO.write(g.model, this.alphabet, path);
+				}
+				String result = g.error != null ? "error: " + g.error
+						: g.model.size() + " states" + (path != null ? ", " + path : "");
+				System.out.println(String.format("sets %s: %s", ranges(g.sets), result));
+				for (int set : g.sets) {
+					map.put(set, g);
+				}
+			}
+			return map;
+		} finally {
+			pool.shutdown();
+			HW.Proxy.terminateAll();
+		}
+	}
+
+	// [0, 1, 2, 5] -> '0-2,5'
+	private static String ranges(List<Integer> sets) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < sets.size(); i++) {
+			int j = i;
+			while (j + 1 < sets.size() && sets.get(j + 1) == sets.get(j) + 1) j++;
+			if (sb.length() > 0) sb.append(',');
+			sb.append(sets.get(i));
+			if (j > i) sb.append('-').append(sets.get(j));
+			i = j;
+		}
+		return sb.toString();
+	}
+
+}
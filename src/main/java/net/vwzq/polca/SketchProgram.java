@@ -0,0 +1,549 @@
+package net.vwzq.polca;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Interpreter for the subset of Sketch used by synthesized policies, both raw
+// solver output (scripts/sketch/output/*.out) and cleaned programs (*.clean):
+// functions over ints, bits and int arrays, if/else, for, return, assert and
+// 'ref' output parameters. Only used to build the tables of SketchPolicy.
+class SketchProgram {
+
+	// variable cell, shared by 'ref' parameters
+	static class Ref {
+		public Object value;
+		public Ref(Object value) {
+			this.value = value;
+		}
+	}
+
+	interface Expr {
+		Object eval(Map<String, Ref> env);
+	}
+
+	interface Stmt {
+		// true if a return was executed
+		boolean exec(Map<String, Ref> env, Ref ret);
+	}
+
+	static class Param {
+		public final String name;
+		public final boolean ref;
+		public Param(String name, boolean ref) {
+			this.name = name;
+			this.ref = ref;
+		}
+	}
+
+	static class Function {
+		public final String name;
+		public final List<Param> params;
+		public final Stmt body;
+		public Function(String name, List<Param> params, Stmt body) {
+			this.name = name;
+			this.params = params;
+			this.body = body;
+		}
+	}
+
+	static class SketchException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public SketchException(String message) {
+			super(message);
+		}
+	}
+
+	private final Map<String, Function> functions = new HashMap<String, Function>();
+	private final String source;
+
+	// tokenizer state
+	private final List<String> tokens = new ArrayList<String>();
+	private final List<Integer> lines = new ArrayList<Integer>();
+	private int pos;
+
+	public SketchProgram(String path) throws IOException {
+		this.source = path;
+		String text = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+		// raw solver output wraps the program with logs
+		int begin = text.indexOf("/* BEGIN PACKAGE");
+		int end = text.indexOf("/* END PACKAGE");
+		if (begin >= 0) {
+			text = text.substring(begin, end > begin ? end : text.length());
+		}
+		try {
+			tokenize(text);
+			while (!peek("")) {
+				Function f = function();
+				this.functions.put(f.name, f);
+			}
+		} catch (SketchException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	public boolean has(String name) {
+		return this.functions.containsKey(name);
+	}
+
+	// Call a function, missing trailing 'ref' arguments are created. Returns the
+	// returned value, or the last 'ref' parameter for solver style functions.
+	public Object call(String name, Object... args) {
+		Function f = this.functions.get(name);
+		if (f == null) throw new SketchException(this.source + ": undefined function " + name);
+		Ref[] refs = new Ref[args.length];
+		for (int i = 0; i < args.length; i++) {
+			refs[i] = new Ref(copy(args[i]));
+		}
+		return invoke(f, refs);
+	}
+
+	// Run a function and return its local variables, used for _main
+	public Map<String, Ref> run(String name) {
+		Function f = this.functions.get(name);
+		if (f == null) throw new SketchException(this.source + ": undefined function " + name);
+		Map<String, Ref> env = new HashMap<String, Ref>();
+		f.body.exec(env, new Ref(null));
+		return env;
+	}
+
+	private Object invoke(Function f, Ref[] args) {
+		if (args.length > f.params.size()) {
+			throw new SketchException(this.source + ": too many arguments for " + f.name);
+		}
+		Map<String, Ref> env = new HashMap<String, Ref>();
+		Ref out = null;
+		for (int i = 0; i < f.params.size(); i++) {
+			Param p = f.params.get(i);
+			if (i < args.length) {
+				env.put(p.name, p.ref ? args[i] : new Ref(copy(args[i].value)));
+			} else if (p.ref) {
+				env.put(p.name, new Ref(0));
+			} else {
+				throw new SketchException(this.source + ": missing argument " + p.name + " for " + f.name);
+			}
+			if (p.ref) out = env.get(p.name);
+		}
+		Ref ret = new Ref(null);
+		f.body.exec(env, ret);
+		if (ret.value != null) return ret.value;
+		return out != null ? out.value : null;
+	}
+
+	private static Object copy(Object value) {
+		return value instanceof int[] ? ((int[]) value).clone() : value;
+	}
+
+	private static int toInt(Object value, String what) {
+		if (!(value instanceof Integer)) throw new SketchException("expected int in " + what);
+		return (Integer) value;
+	}
+
+	// tokenizer
+
+	private void tokenize(String text) {
+		int line = 1, i = 0, n = text.length();
+		while (i < n) {
+			char c = text.charAt(i);
+			if (c == '\n') {
+				line++;
+				i++;
+			} else if (Character.isWhitespace(c)) {
+				i++;
+			} else if (text.startsWith("//", i)) {
+				while (i < n && text.charAt(i) != '\n') i++;
+			} else if (text.startsWith("/*", i)) {
+				int close = text.indexOf("*/", i + 2);
+				close = close < 0 ? n : close + 2;
+				for (int j = i; j < close; j++) {
+					if (text.charAt(j) == '\n') line++;
+				}
+				i = close;
+			} else if (Character.isLetterOrDigit(c) || c == '_') {
+				int j = i;
+				while (j < n && (Character.isLetterOrDigit(text.charAt(j)) || text.charAt(j) == '_')) j++;
+				add(text.substring(i, j), line);
+				i = j;
+			} else {
+				String two = i + 1 < n ? text.substring(i, i + 2) : "";
+				if (Arrays.asList("==", "!=", "<=", ">=", "&&", "||").contains(two)) {
+					add(two, line);
+					i += 2;
+				} else if ("+-*/%<>!=()[]{},;".indexOf(c) >= 0) {
+					add(String.valueOf(c), line);
+					i++;
+				} else {
+					throw new SketchException(this.source + ":" + line + ": unexpected character '" + c + "'");
+				}
+			}
+		}
+		this.pos = 0;
+	}
+
+	private void add(String token, int line) {
+		this.tokens.add(token);
+		this.lines.add(line);
+	}
+
+	private boolean peek(String token) {
+		if (this.pos >= this.tokens.size()) return token.isEmpty();
+		return this.tokens.get(this.pos).equals(token);
+	}
+
+	private boolean accept(String token) {
+		if (peek(token) && !token.isEmpty()) {
+			this.pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private SketchException error(String message) {
+		int line = this.lines.isEmpty() ? 0 : this.lines.get(Math.min(this.pos, this.lines.size() - 1));
+		String near = this.pos < this.tokens.size() ? this.tokens.get(this.pos) : "end of file";
+		return new SketchException(this.source + ":" + line + ": " + message + " near '" + near + "'");
+	}
+
+	private void expect(String token) {
+		if (!accept(token)) throw error("expected '" + token + "'");
+	}
+
+	private String identifier() {
+		if (this.pos >= this.tokens.size()) throw error("expected identifier");
+		String t = this.tokens.get(this.pos);
+		if (!t.matches("[A-Za-z_][A-Za-z0-9_]*")) throw error("expected identifier");
+		this.pos++;
+		return t;
+	}
+
+	private boolean isType() {
+		return peek("int") || peek("bit") || peek("void");
+	}
+
+	// type: int | bit | void, with optional [size]; returns size expression or null
+	private Expr type() {
+		if (!isType()) throw error("expected type");
+		this.pos++;
+		if (accept("[")) {
+			Expr size = expr();
+			expect("]");
+			return size;
+		}
+		return null;
+	}
+
+	// parser
+
+	private Function function() {
+		type();
+		String name = identifier();
+		expect("(");
+		List<Param> params = new ArrayList<Param>();
+		if (!peek(")")) {
+			do {
+				boolean ref = accept("ref");
+				type();
+				params.add(new Param(identifier(), ref));
+			} while (accept(","));
+		}
+		expect(")");
+		if (accept("implements")) identifier();
+		return new Function(name, params, block());
+	}
+
+	private Stmt block() {
+		expect("{");
+		List<Stmt> body = new ArrayList<Stmt>();
+		while (!accept("}")) {
+			if (peek("")) throw error("unterminated block");
+			body.add(statement());
+		}
+		return (env, ret) -> {
+			for (Stmt s : body) {
+				if (s.exec(env, ret)) return true;
+			}
+			return false;
+		};
+	}
+
+	private Stmt statement() {
+		if (peek("{")) return block();
+		if (accept(";")) return (env, ret) -> false;
+		if (accept("if")) {
+			expect("(");
+			Expr cond = expr();
+			expect(")");
+			Stmt then = statement();
+			Stmt other = accept("else") ? statement() : null;
+			return (env, ret) -> {
+				if (toInt(cond.eval(env), "if") != 0) return then.exec(env, ret);
+				return other != null && other.exec(env, ret);
+			};
+		}
+		if (accept("for")) {
+			expect("(");
+			Stmt init = simple();
+			expect(";");
+			Expr cond = expr();
+			expect(";");
+			Stmt step = simple();
+			expect(")");
+			Stmt body = statement();
+			return (env, ret) -> {
+				init.exec(env, ret);
+				while (toInt(cond.eval(env), "for") != 0) {
+					if (body.exec(env, ret)) return true;
+					step.exec(env, ret);
+				}
+				return false;
+			};
+		}
+		if (accept("return")) {
+			Expr value = peek(";") ? null : expr();
+			expect(";");
+			return (env, ret) -> {
+				if (value != null) ret.value = copy(value.eval(env));
+				return true;
+			};
+		}
+		if (accept("assert")) {
+			int line = this.lines.get(this.pos - 1);
+			Expr cond = expr();
+			expect(";");
+			return (env, ret) -> {
+				if (toInt(cond.eval(env), "assert") == 0) {
+					throw new SketchException(this.source + ":" + line + ": assertion failed");
+				}
+				return false;
+			};
+		}
+		Stmt s = simple();
+		expect(";");
+		return s;
+	}
+
+	// declaration, assignment or call, without ';'
+	private Stmt simple() {
+		if (isType()) {
+			Expr size = type();
+			String name = identifier();
+			Expr init = accept("=") ? expr() : null;
+			return (env, ret) -> {
+				Object value;
+				if (init != null) {
+					value = copy(init.eval(env));
+				} else {
+					value = size != null ? new int[toInt(size.eval(env), "size")] : (Object) 0;
+				}
+				env.put(name, new Ref(value));
+				return false;
+			};
+		}
+		int start = this.pos;
+		String name = identifier();
+		if (peek("(")) {
+			this.pos = start;
+			Expr call = expr();
+			return (env, ret) -> {
+				call.eval(env);
+				return false;
+			};
+		}
+		Expr index = null;
+		if (accept("[")) {
+			index = expr();
+			expect("]");
+		}
+		expect("=");
+		Expr value = expr();
+		Expr idx = index;
+		return (env, ret) -> {
+			Ref cell = lookup(env, name);
+			if (idx == null) {
+				cell.value = copy(value.eval(env));
+			} else {
+				int[] array = array(cell, name);
+				int i = toInt(idx.eval(env), name);
+				if (i < 0 || i >= array.length) throw new SketchException(this.source + ": index " + i + " out of bounds in " + name);
+				array[i] = toInt(value.eval(env), name);
+			}
+			return false;
+		};
+	}
+
+	private Ref lookup(Map<String, Ref> env, String name) {
+		Ref cell = env.get(name);
+		if (cell == null) throw new SketchException(this.source + ": undefined variable " + name);
+		return cell;
+	}
+
+	private int[] array(Ref cell, String name) {
+		if (!(cell.value instanceof int[])) throw new SketchException(this.source + ": " + name + " is not an array");
+		return (int[]) cell.value;
+	}
+
+	// expressions, lowest precedence first
+
+	private Expr expr() {
+		Expr left = and();
+		while (accept("||")) {
+			Expr l = left, r = and();
+			left = env -> toInt(l.eval(env), "||") != 0 || toInt(r.eval(env), "||") != 0 ? 1 : 0;
+		}
+		return left;
+	}
+
+	private Expr and() {
+		Expr left = equality();
+		while (accept("&&")) {
+			Expr l = left, r = equality();
+			left = env -> toInt(l.eval(env), "&&") != 0 && toInt(r.eval(env), "&&") != 0 ? 1 : 0;
+		}
+		return left;
+	}
+
+	private Expr equality() {
+		Expr left = relation();
+		while (peek("==") || peek("!=")) {
+			boolean eq = accept("==") || !accept("!=");
+			Expr l = left, r = relation();
+			left = env -> {
+				Object a = l.eval(env), b = r.eval(env);
+				boolean same = (a instanceof int[] && b instanceof int[]) ? Arrays.equals((int[]) a, (int[]) b) : a.equals(b);
+				return same == eq ? 1 : 0;
+			};
+		}
+		return left;
+	}
+
+	private Expr relation() {
+		Expr left = additive();
+		while (peek("<") || peek(">") || peek("<=") || peek(">=")) {
+			String op = this.tokens.get(this.pos++);
+			Expr l = left, r = additive();
+			left = env -> {
+				int a = toInt(l.eval(env), op), b = toInt(r.eval(env), op);
+				switch (op) {
+					case "<": return a < b ? 1 : 0;
+					case ">": return a > b ? 1 : 0;
+					case "<=": return a <= b ? 1 : 0;
+					default: return a >= b ? 1 : 0;
+				}
+			};
+		}
+		return left;
+	}
+
+	private Expr additive() {
+		Expr left = multiplicative();
+		while (peek("+") || peek("-")) {
+			boolean plus = accept("+") || !accept("-");
+			Expr l = left, r = multiplicative();
+			left = env -> plus ? toInt(l.eval(env), "+") + toInt(r.eval(env), "+")
+					: toInt(l.eval(env), "-") - toInt(r.eval(env), "-");
+		}
+		return left;
+	}
+
+	private Expr multiplicative() {
+		Expr left = unary();
+		while (peek("*") || peek("/") || peek("%")) {
+			String op = this.tokens.get(this.pos++);
+			Expr l = left, r = unary();
+			left = env -> {
+				int a = toInt(l.eval(env), op), b = toInt(r.eval(env), op);
+				if (!op.equals("*") && b == 0) throw new SketchException(this.source + ": division by zero");
+				return op.equals("*") ? a * b : op.equals("/") ? a / b : a % b;
+			};
+		}
+		return left;
+	}
+
+	private Expr unary() {
+		if (accept("!")) {
+			Expr e = unary();
+			return env -> toInt(e.eval(env), "!") == 0 ? 1 : 0;
+		}
+		if (accept("-")) {
+			Expr e = unary();
+			return env -> -toInt(e.eval(env), "-");
+		}
+		return primary();
+	}
+
+	private Expr primary() {
+		if (accept("(")) {
+			Expr e = expr();
+			expect(")");
+			return e;
+		}
+		if (accept("{")) {
+			List<Expr> items = new ArrayList<Expr>();
+			if (!peek("}")) {
+				do {
+					items.add(expr());
+				} while (accept(","));
+			}
+			expect("}");
+			return env -> {
+				int[] out = new int[items.size()];
+				for (int i = 0; i < out.length; i++) {
+					out[i] = toInt(items.get(i).eval(env), "{}");
+				}
+				return out;
+			};
+		}
+		if (this.pos < this.tokens.size() && this.tokens.get(this.pos).matches("[0-9]+")) {
+			Integer value = Integer.parseInt(this.tokens.get(this.pos++));
+			return env -> value;
+		}
+		String name = identifier();
+		if (accept("(")) {
+			List<Expr> args = new ArrayList<Expr>();
+			List<String> names = new ArrayList<String>();
+			if (!peek(")")) {
+				do {
+					int start = this.pos;
+					Expr arg = expr();
+					// plain variables can be bound to 'ref' parameters
+					names.add(this.pos == start + 1 && this.tokens.get(start).matches("[A-Za-z_].*") ? this.tokens.get(start) : null);
+					args.add(arg);
+				} while (accept(","));
+			}
+			expect(")");
+			return env -> {
+				Function f = this.functions.get(name);
+				if (f == null) throw new SketchException(this.source + ": undefined function " + name);
+				Ref[] refs = new Ref[args.size()];
+				for (int i = 0; i < refs.length; i++) {
+					boolean ref = i < f.params.size() && f.params.get(i).ref;
+					if (ref && names.get(i) != null) {
+						refs[i] = lookup(env, names.get(i));
+					} else {
+						refs[i] = new Ref(args.get(i).eval(env));
+					}
+				}
+				return invoke(f, refs);
+			};
+		}
+		if (accept("[")) {
+			Expr index = expr();
+			expect("]");
+			return env -> {
+				int[] array = array(lookup(env, name), name);
+				int i = toInt(index.eval(env), name);
+				if (i < 0 || i >= array.length) throw new SketchException(this.source + ": index " + i + " out of bounds in " + name);
+				return array[i];
+			};
+		}
+		return env -> lookup(env, name).value;
+	}
+
+}
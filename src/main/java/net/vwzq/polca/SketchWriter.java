@@ -0,0 +1,113 @@
+package net.vwzq.polca;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.regex.Pattern;
+
+import net.automatalib.automata.transducers.MealyMachine;
+import net.automatalib.automata.transducers.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+
+// Writes Sketch constraints for a learnt model, from memory or in one pass over
+// a DOT file, same output as scripts/dot_to_constraints.sh:
+//   s0 -> s1 [label="m() / 0"];   assert missState(s0) == s1;
+//                                  assert missIdx(s0) == 0;
+//   s0 -> s1 [label="h(2) / _"];  assert hitState(s0, 2) == s1;
+class SketchWriter {
+
+	private static final Pattern STATE = Pattern.compile("s[0-9]+ \\[shape=");
+	private static final Pattern SPACES = Pattern.compile("\\s+");
+
+	public static void write(MealyMachine<?, String, ?, String> model, Alphabet<String> alphabet, int assoc,
+			String template, PrintStream out) throws IOException {
+		CompactMealy<String, String> m = ModelIO.toCompact(model, alphabet);
+		StringBuilder missState = new StringBuilder();
+		StringBuilder missIdx = new StringBuilder();
+		StringBuilder hitState = new StringBuilder();
+		for (int s = 0; s < m.size(); s++) {
+			for (String sym : alphabet) {
+				Integer t = m.getSuccessor(s, sym);
+				if (t == null) continue;
+				if (sym.equals("m()")) {
+					missState.append("\tassert missState(s").append(s).append(") == s").append(t).append(";\n");
+					missIdx.append("\tassert missIdx(s").append(s).append(") == ").append(m.getOutput(s, sym)).append(";\n");
+				} else if (sym.startsWith("h(")) {
+					String num = sym.substring(2, sym.indexOf(')'));
+					hitState.append("\tassert hitState(s").append(s).append(", ").append(num).append(") == s").append(t).append(";\n");
+				}
+			}
+		}
+		print(m.size(), missState, missIdx, hitState, assoc, template, out);
+	}
+
+	public static void write(String dotPath, int assoc, String template, PrintStream out) throws IOException {
+		if (ModelIO.isBinary(dotPath)) {
+			CompactMealy<String, String> model = ModelIO.readBinary(dotPath);
+			write(model, model.getInputAlphabet(), assoc, template, out);
+			return;
+		}
+		try (Reader reader = new FileReader(dotPath)) {
+			write(reader, assoc, template, out);
+		}
+	}
+
+	public static void write(Reader dot, int assoc, String template, PrintStream out) throws IOException {
+		int states = 0;
+		StringBuilder missState = new StringBuilder();
+		StringBuilder missIdx = new StringBuilder();
+		StringBuilder hitState = new StringBuilder();
+
+		BufferedReader in = new BufferedReader(dot);
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (STATE.matcher(line).find()) {
+				states++;
+			}
+			if (line.contains("label=\"m()")) {
+				String[] f = SPACES.split(line.trim());
+				missState.append("\tassert missState(").append(f[0]).append(") == ").append(f[2]).append(";\n");
+				String[] label = SPACES.split(line.split("\"", -1)[1].trim());
+				missIdx.append("\tassert missIdx(").append(f[0]).append(") == ").append(label[2]).append(";\n");
+			} else if (line.contains("label=\"h(")) {
+				String[] f = SPACES.split(line.trim());
+				String num = line.substring(line.indexOf('(') + 1, line.indexOf(')'));
+				hitState.append("\tassert hitState(").append(f[0]).append(", ").append(num).append(") == ").append(f[2]).append(";\n");
+			}
+		}
+		print(states, missState, missIdx, hitState, assoc, template, out);
+	}
+
+	private static void print(int states, StringBuilder missState, StringBuilder missIdx, StringBuilder hitState,
+			int assoc, String template, PrintStream out) {
+
+		StringBuilder row = new StringBuilder("{");
+		for (int i = 0; i < assoc - 1; i++) {
+			row.append("??, ");
+		}
+		row.append("??};");
+
+		out.println("pragma options \"--be:nosim --beopt:simplifycex NOSIM --bnd-inbits 2 --bnd-cbits 2 --bnd-angelicbits 2 --bnd-unroll-amnt 1 --bnd-inline-amnt 2 --slv-seed 1337\";");
+		out.println("int ASSOC = " + assoc + ";");
+		out.println("include \"templates/" + template + ".sk\";");
+		out.println("harness void main() {");
+		out.println("\t// define states");
+		for (int i = 0; i < states; i++) {
+			out.println("\tint[ASSOC] s" + i + " = " + row);
+		}
+		out.println();
+		out.println("\t// miss transitions");
+		out.print(missState);
+		out.println();
+		out.println("\t// miss index");
+		out.print(missIdx);
+		out.println();
+		out.println("\t// hit state");
+		out.print(hitState);
+		out.println("}");
+		out.flush();
+	}
+
+}
@@ -0,0 +1,156 @@
+package net.vwzq.polca;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+
+// Runs a matrix of experiments inside one JVM, e.g.:
+//   -sweep 'policy=lru,plru;ways=2,4;learner=kv,ttt;r_bound=200,1000;seed=1,2,3'
+// Every key is a regular command line option, remaining options are shared by all runs.
+class Sweep {
+
+	private static final List<String> SWEEP_OPTIONS = Arrays.asList("sweep", "sweep_out", "threads");
+
+	private final Options options;
+	private final List<String> baseArgs;
+	private final List<List<String>> runs;
+	private final String output;
+	private final int threads;
+
+	public Sweep(CommandLine cmd, String[] args, Options options) {
+		this.options = options;
+		this.output = cmd.getOptionValue("sweep_out", "");
+		this.threads = Integer.parseInt(cmd.getOptionValue("threads",
+				Integer.toString(Runtime.getRuntime().availableProcessors())));
+		this.baseArgs = stripSweepOptions(args);
+		this.runs = expand(parseMatrix(cmd.getOptionValue("sweep")));
+	}
+
+	// key=v1,v2;key2=v3 -> {key: [v1, v2], key2: [v3]}
+	private static Map<String, List<String>> parseMatrix(String spec) {
+		Map<String, List<String>> matrix = new LinkedHashMap<String, List<String>>();
+		for (String entry : spec.split(";")) {
+			if (entry.trim().isEmpty()) continue;
+			String[] kv = entry.split("=", 2);
+			if (kv.length != 2 || kv[1].trim().isEmpty()) {
+				throw new IllegalArgumentException("invalid sweep entry: " + entry);
+			}
+			List<String> values = new ArrayList<String>();
+			for (String v : kv[1].split(",")) {
+				values.add(v.trim());
+			}
+			matrix.put(kv[0].trim(), values);
+		}
+		return matrix;
+	}
+
+	// cartesian product, each run is a list of command line arguments
+	private List<List<String>> expand(Map<String, List<String>> matrix) {
+		List<List<String>> out = new ArrayList<List<String>>();
+		out.add(new ArrayList<String>());
+		for (Map.Entry<String, List<String>> entry : matrix.entrySet()) {
+			if (!this.options.hasOption(entry.getKey()) || SWEEP_OPTIONS.contains(entry.getKey())) {
+				throw new IllegalArgumentException("unknown sweep option: " + entry.getKey());
+			}
+			List<List<String>> next = new ArrayList<List<String>>();
+			for (List<String> run : out) {
+				for (String value : entry.getValue()) {
+					List<String> tmp = new ArrayList<String>(run);
+					tmp.add("-" + entry.getKey());
+					tmp.add(value);
+					next.add(tmp);
+				}
+			}
+			out = next;
+		}
+		return out;
+	}
+
+	private List<String> stripSweepOptions(String[] args) {
+		List<String> out = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			String name = args[i].replaceFirst("^-+", "");
+			if (args[i].startsWith("-") && SWEEP_OPTIONS.contains(name)) {
+				i++; // skip value
+				continue;
+			}
+			out.add(args[i]);
+		}
+		return out;
+	}
+
+	private RunStats runOne(List<String> overrides) {
+		// first occurrence of an option wins, so overrides go before shared arguments
+		List<String> args = new ArrayList<String>(overrides);
+		args.add("-s");
+		args.addAll(this.baseArgs);
+		Polca polca = null;
+		try {
+			CommandLine cmd = new DefaultParser().parse(this.options, args.toArray(new String[0]));
+			polca = new Polca(cmd);
+			if (polca.getConfig().is_hw) {
+				throw new Exception("sweep doesn't support 'hw' policy");
+			}
+			polca.learn();
+			return polca.getStats();
+		} catch (Exception e) {
+			RunStats stats = polca != null && polca.getStats() != null ? polca.getStats() : null;
+			if (stats == null) {
+				// failed before learning (e.g. bad option), keep the row
+				System.err.println("sweep: " + String.join(" ", overrides) + ": " + e.getMessage());
+				if (polca == null) return new RunStats(String.join(" ", overrides) + ": " + e);
+				Config config = polca.getConfig();
+				stats = new RunStats(config, config.seed != null ? config.seed : 0);
+			}
+			stats.error = e.toString();
+			return stats;
+		}
+	}
+
+	public void run() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		List<Future<RunStats>> futures = new ArrayList<Future<RunStats>>();
+		for (List<String> overrides : this.runs) {
+			futures.add(pool.submit(() -> {
+				RunStats stats = Metrics.run(() -> runOne(overrides));
+				System.err.println("sweep: done " + String.join(" ", overrides)
+						+ (stats != null ? " (" + stats.wall_ms + " ms, " + stats.states + " states)" : ""));
+				return stats;
+			}));
+		}
+		pool.shutdown();
+
+		boolean json = this.output.endsWith(".json");
+		PrintStream out = this.output.isEmpty() ? System.out : new PrintStream(this.output);
+		try {
+			if (json) out.println("[");
+			else out.println(RunStats.csvHeader());
+			boolean first = true;
+			for (Future<RunStats> f : futures) {
+				RunStats stats = f.get();
+				if (stats == null) continue;
+				if (json) {
+					out.print((first ? "  " : ",\n  ") + stats.toJson());
+				} else {
+					out.println(stats.toCsv());
+				}
+				out.flush();
+				first = false;
+			}
+			if (json) out.println("\n]");
+		} finally {
+			if (out != System.out) out.close();
+		}
+	}
+
+}
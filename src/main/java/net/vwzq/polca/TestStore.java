@@ -0,0 +1,69 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.api.query.Query;
+import net.automatalib.automata.transducers.MealyMachine;
+import net.automatalib.words.Word;
+
+// Keeps every equivalence test word with the output observed on the SUL.
+// Each new hypothesis is first checked against the stored tests in memory:
+// a stored test the hypothesis now gets wrong is a counterexample for free,
+// only when all of them pass are new words sent to the SUL.
+class TestStore implements MealyMembershipOracle<String, String> {
+
+	private final MealyMembershipOracle<String, String> delegate;
+	private final Map<Word<String>, Word<String>> tests = new LinkedHashMap<Word<String>, Word<String>>();
+
+	public TestStore(MealyMembershipOracle<String, String> delegate) {
+		this.delegate = delegate;
+		Metrics.get().gauge("eq.store.size", () -> this.tests.size());
+	}
+
+	@Override
+	public void processQueries(Collection<? extends Query<String, Word<String>>> queries) {
+		List<DefaultQuery<String, Word<String>>> copies = new ArrayList<DefaultQuery<String, Word<String>>>(queries.size());
+		for (Query<String, Word<String>> q : queries) {
+			copies.add(new DefaultQuery<String, Word<String>>(q.getPrefix(), q.getSuffix(), null));
+		}
+		this.delegate.processQueries(copies);
+		int i = 0;
+		for (Query<String, Word<String>> q : queries) {
+			DefaultQuery<String, Word<String>> c = copies.get(i++);
+			if (q.getPrefix().isEmpty()) {
+				this.tests.put(c.getSuffix(), c.getOutput());
+			}
+			q.answer(c.getOutput());
+		}
+	}
+
+	public int size() {
+		return this.tests.size();
+	}
+
+	// e.g. a noisy answer the learner can't use
+	public void forget(Word<String> word) {
+		this.tests.remove(word);
+	}
+
+	// shortest stored test failing on 'hyp', null if all pass
+	public DefaultQuery<String, Word<String>> findCounterExample(MealyMachine<?, String, ?, String> hyp) {
+		Word<String> best = null;
+		for (Map.Entry<Word<String>, Word<String>> t : this.tests.entrySet()) {
+			if (best != null && t.getKey().length() >= best.length()) continue;
+			if (!hyp.computeOutput(t.getKey()).equals(t.getValue())) {
+				best = t.getKey();
+			}
+		}
+		if (best == null) return null;
+		Metrics.get().counter("eq.store.counterexamples").increment();
+		return new DefaultQuery<String, Word<String>>(Word.epsilon(), best, this.tests.get(best));
+	}
+
+}
@@ -0,0 +1,105 @@
+package net.vwzq.polca;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.automatalib.words.Word;
+
+// Concrete translations of abstract prefixes: for every symbol, the block that
+// was accessed and the abstract output (the located victim for m()). Queries
+// replay their longest stored proper prefix with CacheSUL.cachedSteps, so only
+// the misses in the rest of the word are located on the cache (the caches
+// above pass whole words, with an empty prefix). Only symbols whose output got
+// 'confirm' votes are replayed: on a noisy SUL repetitions measure unconfirmed
+// symbols again and vote on them, and the majority decides which translation
+// later queries build on. The trie is dropped once it holds MAX_SIZE nodes.
+class TranslationTrie {
+
+	static class Node {
+		public final Map<String, Node> children = new HashMap<String, Node>();
+		public String input;
+		public final Map<String, Integer> votes = new HashMap<String, Integer>();
+		public String output;
+	}
+
+	private static final int MAX_SIZE = 1 << 20;
+
+	private final Node root = new Node();
+	private final int confirm;
+	private int size = 0;
+
+	public TranslationTrie(int confirm) {
+		this.confirm = confirm;
+		// the registry outlives the trie, don't keep it reachable from there
+		WeakReference<TranslationTrie> ref = new WeakReference<TranslationTrie>(this);
+		Metrics.get().gauge("sul.translation.size", () -> {
+			TranslationTrie trie = ref.get();
+			return trie != null ? trie.size : 0;
+		});
+	}
+
+	// translations of the longest confirmed proper prefix of 'word'
+	public List<ArrayList<String>> lookup(Word<String> word) {
+		List<ArrayList<String>> out = new ArrayList<ArrayList<String>>();
+		Node node = this.root;
+		for (int i = 0; i < word.length() - 1; i++) {
+			node = node.children.get(word.getSymbol(i));
+			if (node == null || node.votes.get(node.output) < this.confirm) break;
+			out.add(new ArrayList<String>(Arrays.asList(node.input, node.output)));
+		}
+		return out;
+	}
+
+	// 'translation' covers all of 'word', the first 'known' entries come from
+	// lookup(), the others were measured and vote
+	public void insert(Word<String> word, List<ArrayList<String>> translation, int known) {
+		if (this.size >= MAX_SIZE) {
+			Metrics.get().counter("sul.translation.dropped").increment();
+			this.root.children.clear();
+			this.size = 0;
+		}
+		Node node = this.root;
+		for (int i = 0; i < word.length(); i++) {
+			String sym = word.getSymbol(i);
+			Node next = node.children.get(sym);
+			String input = translation.get(i).get(0);
+			String output = translation.get(i).get(1);
+			if (next == null) {
+				next = new Node();
+				next.input = input;
+				next.output = output;
+				next.votes.put(output, 1);
+				node.children.put(sym, next);
+				this.size++;
+			} else if (i >= known) {
+				int n = next.votes.merge(output, 1, Integer::sum);
+				if (!output.equals(next.output)) {
+					if (n <= next.votes.get(next.output)) {
+						// outvoted, the rest of this measurement assumed another victim
+						return;
+					}
+					// the majority changed, longer translations assumed the old victim
+					Metrics.get().counter("sul.translation.flips").increment();
+					next.input = input;
+					next.output = output;
+					this.size -= count(next) - 1;
+					next.children.clear();
+				}
+			}
+			node = next;
+		}
+	}
+
+	private static int count(Node node) {
+		int n = 1;
+		for (Node c : node.children.values()) {
+			n += count(c);
+		}
+		return n;
+	}
+
+}
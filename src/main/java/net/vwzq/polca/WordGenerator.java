@@ -0,0 +1,204 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.automatalib.automata.transducers.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+// Test words for equivalence queries, selected with -r_rand:
+//   uniform        every symbol equally likely (as -r_rand unset, but seeded)
+//   miss[:p]       m() with probability p (default 0.5), misses drive the state
+//   pressure       follows the hypothesis and hits the block it would evict next,
+//                  so replacement decisions are tested against fresh hits
+//   coverage       prefers the transitions of the hypothesis tested least often
+//   fixed[:seed]   uniform from its own seed, replayed from the start for every
+//                  hypothesis: the same test suite in every round and run
+//   a.b.Class      any subclass with a (Config, Random) constructor
+// Several generators, e.g. 'miss,coverage', take turns word by word.
+abstract class WordGenerator {
+
+	protected final Config config;
+	protected final Random random;
+	protected Alphabet<String> alphabet;
+	protected CompactMealy<String, String> hyp;
+
+	public WordGenerator(Config config, Random random) {
+		this.config = config;
+		this.random = random;
+	}
+
+	abstract public String name();
+
+	// next symbol given the current hypothesis state
+	abstract protected String symbol(int state);
+
+	// called for every new hypothesis
+	public void setHypothesis(CompactMealy<String, String> hyp, Alphabet<String> alphabet) {
+		this.hyp = hyp;
+		this.alphabet = alphabet;
+	}
+
+	public Word<String> next() {
+		int len = this.config.r_min + this.random.nextInt(Math.max(1, this.config.r_len - this.config.r_min + 1));
+		WordBuilder<String> wb = new WordBuilder<>(len);
+		Integer state = this.hyp.getInitialState();
+		for (int i = 0; i < len; i++) {
+			String sym = symbol(state);
+			wb.add(sym);
+			state = this.hyp.getSuccessor(state, sym);
+		}
+		return wb.toWord();
+	}
+
+	protected String uniform() {
+		return this.alphabet.getSymbol(this.random.nextInt(this.alphabet.size()));
+	}
+
+	protected String miss() {
+		return this.alphabet.getSymbol(this.alphabet.size() - 1);
+	}
+
+	public static List<WordGenerator> create(String spec, Config config, Random random) throws Exception {
+		List<WordGenerator> out = new ArrayList<WordGenerator>();
+		for (String s : spec.split(",")) {
+			String[] f = s.trim().split(":", 2);
+			String arg = f.length > 1 ? f[1] : null;
+			switch (f[0]) {
+				case "uniform":
+					out.add(new Uniform(config, random));
+					break;
+				case "miss":
+					out.add(new MissBiased(config, random, arg != null ? Double.parseDouble(arg) : 0.5));
+					break;
+				case "pressure":
+					out.add(new Pressure(config, random));
+					break;
+				case "coverage":
+					out.add(new Coverage(config, random));
+					break;
+				case "fixed":
+					out.add(new Fixed(config, arg != null ? Long.parseLong(arg) : 0));
+					break;
+				default:
+					try {
+						out.add((WordGenerator) Class.forName(f[0]).getConstructor(Config.class, Random.class)
+								.newInstance(config, random));
+					} catch (ReflectiveOperationException | ClassCastException e) {
+						throw new Exception("unknown random word generator: " + f[0]);
+					}
+			}
+		}
+		return out;
+	}
+
+	static class Uniform extends WordGenerator {
+		public Uniform(Config config, Random random) {
+			super(config, random);
+		}
+
+		public String name() {
+			return "uniform";
+		}
+
+		protected String symbol(int state) {
+			return uniform();
+		}
+	}
+
+	static class MissBiased extends WordGenerator {
+		private final double p;
+
+		public MissBiased(Config config, Random random, double p) {
+			super(config, random);
+			this.p = p;
+		}
+
+		public String name() {
+			return "miss";
+		}
+
+		protected String symbol(int state) {
+			if (this.random.nextDouble() < this.p) return miss();
+			return this.alphabet.getSymbol(this.random.nextInt(this.alphabet.size() - 1));
+		}
+	}
+
+	static class Pressure extends WordGenerator {
+		public Pressure(Config config, Random random) {
+			super(config, random);
+		}
+
+		public String name() {
+			return "pressure";
+		}
+
+		protected String symbol(int state) {
+			int r = this.random.nextInt(3);
+			if (r == 0) return miss();
+			if (r == 1) {
+				// index of the block the hypothesis evicts on the next miss
+				String victim = this.hyp.getOutput(state, miss());
+				if (victim != null && victim.matches("\\d+")) return "h(" + victim + ")";
+			}
+			return uniform();
+		}
+	}
+
+	static class Coverage extends WordGenerator {
+		private int[][] tested;
+
+		public Coverage(Config config, Random random) {
+			super(config, random);
+		}
+
+		public String name() {
+			return "coverage";
+		}
+
+		public void setHypothesis(CompactMealy<String, String> hyp, Alphabet<String> alphabet) {
+			super.setHypothesis(hyp, alphabet);
+			this.tested = new int[hyp.size()][alphabet.size()];
+		}
+
+		protected String symbol(int state) {
+			int[] counts = this.tested[state];
+			int best = this.random.nextInt(counts.length);
+			// some randomness, so that sequences of least tested transitions vary
+			if (this.random.nextInt(5) != 0) {
+				for (int i = 0, start = best; i < counts.length; i++) {
+					int j = (start + i) % counts.length;
+					if (counts[j] < counts[best]) best = j;
+				}
+			}
+			counts[best]++;
+			return this.alphabet.getSymbol(best);
+		}
+	}
+
+	static class Fixed extends WordGenerator {
+		private final long seed;
+
+		public Fixed(Config config, long seed) {
+			super(config, new Random(seed));
+			this.seed = seed;
+		}
+
+		public String name() {
+			return "fixed";
+		}
+
+		public void setHypothesis(CompactMealy<String, String> hyp, Alphabet<String> alphabet) {
+			super.setHypothesis(hyp, alphabet);
+			this.random.setSeed(this.seed);
+		}
+
+		protected String symbol(int state) {
+			return uniform();
+		}
+	}
+
+}
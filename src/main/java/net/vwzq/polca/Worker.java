@@ -0,0 +1,95 @@
+package net.vwzq.polca;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.learnlib.api.oracle.MembershipOracle.MealyMembershipOracle;
+import de.learnlib.api.query.DefaultQuery;
+import net.automatalib.words.Word;
+
+// Answers membership queries for a coordinator (-workers) over TCP, with the
+// SUL given by the regular options (-p, -w, -b ...). One line per query:
+//   -> polca-worker <ways>        greeting
+//   <- q h(0) m() | m() h(1)      prefix | suffix, space separated symbols
+//   -> a 1 _                      outputs of the suffix
+//   -> e <message>                the query failed
+// The protocol has no authentication, only listen on trusted networks.
+class Worker {
+
+	private final Config config;
+	private final MealyMembershipOracle<String, String> oracle;
+
+	public Worker(Config config) throws Exception {
+		this.config = config;
+		Random random = new Random();
+		if (config.seed != null) random.setSeed(config.seed);
+		// noisy SULs are repeated here, the coordinator doesn't know about them
+		this.oracle = new HitFilterOracle(Polca.repeatOracle(config, new CacheSULOracle(
+				new CacheSUL(config, Polca.buildAlphabet(config.ways)), config, "worker", config.noise, config.probability, random)));
+		// restore regular settings of the proxy on exit
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> HW.Proxy.terminateAll()));
+	}
+
+	public void serve(int port) throws IOException {
+		ExecutorService clients = Executors.newCachedThreadPool();
+		try (ServerSocket server = new ServerSocket(port)) {
+			System.err.println("worker: listening on " + server.getLocalSocketAddress());
+			while (true) {
+				Socket socket = server.accept();
+				clients.submit(() -> handle(socket));
+			}
+		} finally {
+			clients.shutdownNow();
+		}
+	}
+
+	// queries of all coordinators share the SUL and the noise estimate,
+	// CacheSULOracle serializes them
+	private void handle(Socket socket) {
+		String peer = socket.getRemoteSocketAddress().toString();
+		System.err.println("worker: " + peer + " connected");
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				PrintWriter out = new PrintWriter(s.getOutputStream(), true)) {
+			s.setTcpNoDelay(true);
+			out.println("polca-worker " + this.config.ways);
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.equals("quit")) break;
+				out.println(answer(line));
+			}
+		} catch (IOException e) {
+			System.err.println("worker: " + peer + ": " + e.getMessage());
+		}
+		System.err.println("worker: " + peer + " disconnected");
+	}
+
+	private String answer(String line) {
+		if (!line.startsWith("q ")) return "e unknown command";
+		String[] parts = line.substring(2).split("\\|", -1);
+		if (parts.length != 2) return "e expected 'q prefix | suffix'";
+		DefaultQuery<String, Word<String>> q = new DefaultQuery<String, Word<String>>(parse(parts[0]), parse(parts[1]), null);
+		try {
+			this.oracle.processQueries(Collections.singletonList(q));
+		} catch (RuntimeException e) {
+			return "e " + (e.getMessage() != null ? e.getMessage() : e.toString()).replace('\n', ' ');
+		}
+		Metrics.get().counter("worker.queries").increment();
+		return ("a " + String.join(" ", q.getOutput().asList())).trim();
+	}
+
+	public static Word<String> parse(String symbols) {
+		String trimmed = symbols.trim();
+		return trimmed.isEmpty() ? Word.epsilon() : Word.fromSymbols(trimmed.split("\\s+"));
+	}
+
+}
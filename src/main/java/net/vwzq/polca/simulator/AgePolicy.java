@@ -0,0 +1,198 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Parametric age counter policy (QLRU/RRIP family), covers SRRIPHP, SRRIPFP,
+// SKYL2 (new1) and SKYL3 (new2). Parameters are given as a spec, e.g.
+//   bits=2,insert=2,hit=0000,age=miss,tie=left,init=max    (SRRIP-HP)
+//   bits=2,insert=1,hit=0011,age=always,tie=left,init=max  (SKYL3)
+// where:
+//   bits    counter width, ages go from 0 to 2^bits-1 (the eviction age)
+//   insert  age of inserted blocks
+//   hit     new age on hit, one digit for each old age
+//   age     miss: age lines only when a miss finds no victim
+//           always: after every access, age until some line is evictable
+//           always-skip: same, but never age the accessed line
+//   tie     left|right, victim among lines with the eviction age
+//   init    max: all lines evictable, last0: last line at age 0
+class AgePolicy extends CachePolicy {
+
+	static class Params {
+		public int bits, insert;
+		public int[] hit;
+		public boolean always, skip, right, last0;
+
+		public int max() {
+			return (1 << this.bits) - 1;
+		}
+
+		public static Params parse(String spec) throws Exception {
+			Params p = new Params();
+			p.bits = 2;
+			p.insert = -1;
+			for (String kv : spec.split(",")) {
+				String[] f = kv.trim().split("=", 2);
+				String v = f.length > 1 ? f[1].trim().toLowerCase() : "";
+				switch (f[0].trim().toLowerCase()) {
+					case "bits":
+						p.bits = Integer.parseInt(v);
+						break;
+					case "insert":
+						p.insert = Integer.parseInt(v);
+						break;
+					case "hit":
+						p.hit = new int[v.length()];
+						for (int i = 0; i < v.length(); i++) {
+							p.hit[i] = Character.digit(v.charAt(i), 10);
+						}
+						break;
+					case "age":
+						p.always = !v.equals("miss");
+						p.skip = v.equals("always-skip");
+						if (!v.equals("miss") && !v.equals("always") && !v.equals("always-skip")) {
+							throw new Exception("unsupported aging: " + v);
+						}
+						break;
+					case "tie":
+						p.right = v.equals("right");
+						break;
+					case "init":
+						p.last0 = v.equals("last0");
+						break;
+					default:
+						throw new Exception("unknown age policy parameter: " + f[0]);
+				}
+			}
+			if (p.bits < 1 || p.bits > 3) {
+				throw new Exception("bits must be between 1 and 3");
+			}
+			if (p.insert < 0) p.insert = p.max() - 1;
+			if (p.hit == null) p.hit = new int[p.max() + 1];
+			if (p.insert > p.max() || p.hit.length != p.max() + 1) {
+				throw new Exception("ages out of range in: " + spec);
+			}
+			for (int a : p.hit) {
+				if (a < 0 || a > p.max()) throw new Exception("ages out of range in: " + spec);
+			}
+			return p;
+		}
+
+		public String toString() {
+			StringBuilder hit = new StringBuilder();
+			for (int a : this.hit) hit.append(a);
+			return "bits=" + this.bits + ",insert=" + this.insert + ",hit=" + hit
+					+ ",age=" + (this.always ? (this.skip ? "always-skip" : "always") : "miss")
+					+ ",tie=" + (this.right ? "right" : "left") + ",init=" + (this.last0 ? "last0" : "max");
+		}
+	}
+
+	// every parameterisation up to 'bits', hit promotions are monotone and never
+	// age a line (e.g. 0000, 0012, 0011), so the space stays in the thousands
+	public static List<Params> enumerate(int bits) {
+		List<Params> all = new ArrayList<Params>();
+		for (int b = 1; b <= bits; b++) {
+			List<int[]> hits = new ArrayList<int[]>();
+			promotions(new int[1 << b], 1, hits);
+			for (int insert = 0; insert < (1 << b); insert++) {
+				for (int[] hit : hits) {
+					for (int age = 0; age < 3; age++) {
+						for (int tie = 0; tie < 2; tie++) {
+							for (int init = 0; init < 2; init++) {
+								Params p = new Params();
+								p.bits = b;
+								p.insert = insert;
+								p.hit = hit;
+								p.always = age > 0;
+								p.skip = age > 1;
+								p.right = tie > 0;
+								p.last0 = init > 0;
+								all.add(p);
+							}
+						}
+					}
+				}
+			}
+		}
+		return all;
+	}
+
+	private static void promotions(int[] hit, int age, List<int[]> out) {
+		if (age == hit.length) {
+			out.add(hit.clone());
+			return;
+		}
+		for (int a = hit[age - 1]; a <= age; a++) {
+			hit[age] = a;
+			promotions(hit, age + 1, out);
+		}
+	}
+
+	private final Params params;
+	private final int MAX;
+
+	public AgePolicy(Config config) throws Exception {
+		this(config, Params.parse(config.age_spec != null ? config.age_spec : ""));
+	}
+
+	public AgePolicy(Config config, Params params) {
+		super (config);
+		this.params = params;
+		this.MAX = params.max();
+		this.reset();
+	}
+
+	public void reset() {
+		for (int i=0; i < this.WAYS; i++) {
+			this.cache[i] = new Line(this.alpha[i], MAX);
+		}
+		if (this.params.last0) {
+			this.cache[this.WAYS-1].state = 0;
+		}
+	}
+
+	protected int hit(String block) {
+		int h = -1;
+		for (int i=0; i < this.WAYS; i++) {
+			if (this.cache[i].block.equals(block)) {
+				this.cache[i].state = this.params.hit[this.cache[i].state];
+				h = i;
+				break;
+			}
+		}
+		if (this.params.always) this.age(h);
+		return -1;
+	}
+
+	protected int miss(String block) {
+		this.age(-1);
+		int victim = -1;
+		for (int i=0; i < this.WAYS; i++) {
+			int j = this.params.right ? this.WAYS-1-i : i;
+			if (this.cache[j].state == MAX) {
+				victim = j;
+				break;
+			}
+		}
+		this.cache[victim].block = block;
+		this.cache[victim].state = this.params.insert;
+		if (this.params.always) this.age(victim);
+		return victim;
+	}
+
+	// increase ages until some line is evictable
+	protected void age(int last) {
+		int skip = this.params.skip && this.WAYS > 1 ? last : -1;
+		int oldest = -1;
+		for (int i=0; i < this.WAYS; i++) {
+			if (i != skip) oldest = Math.max(oldest, this.cache[i].state);
+		}
+		for (int i=0; i < this.WAYS; i++) {
+			if (this.cache[i].state == MAX) return;
+		}
+		for (int i=0; i < this.WAYS; i++) {
+			if (i != skip) this.cache[i].state += MAX - oldest;
+		}
+	}
+
+}
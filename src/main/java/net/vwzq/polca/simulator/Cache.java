@@ -1,6 +1,8 @@
 package net.vwzq.polca;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 
 interface Cache {
 	public String locateMiss(ArrayList<String> word, ArrayList<String> candidates);
@@ -13,6 +15,7 @@ abstract class CachePolicy implements Cache {
 	protected Line[] cache;
 	protected String[] alpha;
 	protected int clock;
+	protected MissLocator locator;
 
 	class Line {
 		public String block;
@@ -32,6 +35,7 @@ abstract class CachePolicy implements Cache {
 		this.cache = new Line[config.ways];
 		this.alpha = "abcdefghijklmnopqrstuvwxyz".substring(0, config.ways).split("");
 		this.clock = 1;
+		this.locator = MissLocator.create(config);
 	}
 
 	public int access(String block) {
@@ -58,15 +62,55 @@ abstract class CachePolicy implements Cache {
 
 	// Access word and check which element from candidates is not in cache
 	public String locateMiss(ArrayList<String> word, ArrayList<String> candidates) {
-		for (String c : candidates) {
+		return this.locator.locate(candidates, group -> {
 			this.reset();
 			this.access(word);
-			// if miss, we found evicted block
-			if (this.access(c) == 1) {
-				return c;
+			// if any miss, the evicted block is in the group
+			for (String c : group) {
+				if (this.access(c) == 1) {
+					return true;
+				}
 			}
+			return false;
+		});
+	}
+
+	// Canonical description of the control state, blocks are renamed by their
+	// abstract index, so equal keys mean equal future behaviour
+	public String stateKey(Map<String, Integer> rename) {
+		int[] states = this.lineStates();
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i < this.WAYS; i++) {
+			sb.append(rename.get(this.cache[i].block)).append(':').append(states[i]).append(' ');
+		}
+		return sb.append(this.extraState()).toString();
+	}
+
+	protected int[] lineStates() {
+		int[] states = new int[this.WAYS];
+		for (int i=0; i < this.WAYS; i++) {
+			states[i] = this.cache[i].state;
 		}
+		return states;
+	}
+
+	// state not stored in lines (e.g. tree bits)
+	protected String extraState() {
 		return "";
 	}
 
+	// dense ranking of line states, used by policies storing timestamps
+	protected int[] rankedStates() {
+		int[] sorted = new int[this.WAYS];
+		for (int i=0; i < this.WAYS; i++) {
+			sorted[i] = this.cache[i].state;
+		}
+		Arrays.sort(sorted);
+		int[] ranks = new int[this.WAYS];
+		for (int i=0; i < this.WAYS; i++) {
+			ranks[i] = Arrays.binarySearch(sorted, this.cache[i].state);
+		}
+		return ranks;
+	}
+
 }
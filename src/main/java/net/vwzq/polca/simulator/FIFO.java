@@ -30,5 +30,8 @@ class FIFO extends CachePolicy {
 		return victim;
 	}
 
-}
+	protected int[] lineStates() {
+		return this.rankedStates();
+	}
 
+}
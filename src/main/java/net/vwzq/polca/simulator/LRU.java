@@ -37,4 +37,8 @@ class LRU extends CachePolicy {
 		return victim;
 	}
 
+	protected int[] lineStates() {
+		return this.rankedStates();
+	}
+
 }
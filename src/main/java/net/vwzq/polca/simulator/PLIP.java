@@ -1,5 +1,7 @@
 package net.vwzq.polca;
 
+import java.util.Arrays;
+
 class PLIP extends CachePolicy {
 
 	// tree-based PLIP
@@ -72,4 +74,8 @@ class PLIP extends CachePolicy {
 		return j;
 	}
 
+	protected String extraState() {
+		return Arrays.toString(this.arrows);
+	}
+
 }
@@ -1,5 +1,7 @@
 package net.vwzq.polca;
 
+import java.util.Arrays;
+
 class PLRU extends CachePolicy {
 
 	// tree-based PLRU
@@ -75,4 +77,8 @@ class PLRU extends CachePolicy {
 		return idx;
 	}
 
+	protected String extraState() {
+		return Arrays.toString(this.arrows);
+	}
+
 }
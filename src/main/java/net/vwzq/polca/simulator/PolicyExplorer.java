@@ -0,0 +1,153 @@
+package net.vwzq.polca;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.automatalib.automata.transducers.impl.compact.CompactMealy;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+
+// Builds the abstract Mealy machine of a simulated policy by direct state
+// exploration, using the same abstraction as CacheSUL (h(i) hits the block
+// with abstract index i, m() misses and outputs the index of the evicted block)
+class PolicyExplorer {
+
+	private final Alphabet<String> alphabet;
+	private final CachePolicy policy;
+	private final int ways;
+	private final String[] concrete;
+	private String[] intern;
+
+	public PolicyExplorer(Config config, Alphabet<String> alphabet) throws Exception {
+		this(CacheSUL.instantiateCache(config), config.ways, alphabet);
+	}
+
+	public PolicyExplorer(Cache cache, int ways, Alphabet<String> alphabet) throws Exception {
+		if (!(cache instanceof CachePolicy)) {
+			throw new Exception("can't explore non simulated policy");
+		}
+		this.policy = (CachePolicy) cache;
+		this.ways = ways;
+		this.alphabet = alphabet;
+		this.concrete = "abcdefghijklmnopqrstuvwxyz".substring(0, ways + 1).split("");
+	}
+
+	private void reset() {
+		this.policy.reset();
+		this.intern = this.concrete.clone();
+	}
+
+	private boolean contains(String block) {
+		for (int i = 0; i < this.ways; i++) {
+			if (this.policy.cache[i].block.equals(block)) return true;
+		}
+		return false;
+	}
+
+	private String step(String symbol) {
+		if (symbol.startsWith("h(")) {
+			int pos = Integer.parseInt(symbol.replaceAll("[^\\d]", ""));
+			this.policy.access(this.intern[pos]);
+			return "_";
+		}
+		this.policy.access(this.intern[this.ways]);
+		for (int i = 0; i < this.ways; i++) {
+			if (!contains(this.intern[i])) {
+				String tmp = this.intern[i];
+				this.intern[i] = this.intern[this.ways];
+				this.intern[this.ways] = tmp;
+				return Integer.toString(i);
+			}
+		}
+		throw new IllegalStateException("no block evicted on miss");
+	}
+
+	private String key() {
+		Map<String, Integer> rename = new HashMap<String, Integer>();
+		for (int i = 0; i <= this.ways; i++) {
+			rename.put(this.intern[i], i);
+		}
+		return this.policy.stateKey(rename);
+	}
+
+	// replay access word from reset, returns output of last symbol
+	private String replay(Word<String> word) {
+		this.reset();
+		String out = "";
+		for (String sym : word) {
+			out = this.step(sym);
+		}
+		return out;
+	}
+
+	// breadth-first exploration of reachable control states, result is minimized
+	public CompactMealy<String, String> explore() {
+		CompactMealy<String, String> model = new CompactMealy<String, String>(this.alphabet);
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<Word<String>> access = new ArrayList<Word<String>>();
+
+		this.reset();
+		ids.put(this.key(), model.addInitialState());
+		access.add(Word.epsilon());
+
+		for (int s = 0; s < access.size(); s++) {
+			for (int i = 0; i < this.alphabet.size(); i++) {
+				Word<String> word = access.get(s).append(this.alphabet.getSymbol(i));
+				String out = this.replay(word);
+				String key = this.key();
+				Integer succ = ids.get(key);
+				if (succ == null) {
+					succ = model.addState();
+					ids.put(key, succ);
+					access.add(word);
+				}
+				model.setTransition(s, i, succ, out);
+			}
+		}
+		return Automata.minimize(model, this.alphabet, new CompactMealy<String, String>(this.alphabet));
+	}
+
+	// explores the policy in lockstep with 'target' (same alphabet), stops at the
+	// first different output or after 'maxStates' control states of the policy
+	public boolean matches(CompactMealy<String, String> target, int maxStates) {
+		Map<String, Integer> seen = new HashMap<String, Integer>();
+		Set<String> pairs = new HashSet<String>();
+		List<Word<String>> access = new ArrayList<Word<String>>();
+		List<Integer> states = new ArrayList<Integer>();
+
+		this.reset();
+		seen.put(this.key(), 0);
+		pairs.add(this.key() + "#" + target.getInitialState());
+		access.add(Word.epsilon());
+		states.add(target.getInitialState());
+
+		for (int s = 0; s < access.size(); s++) {
+			for (int i = 0; i < this.alphabet.size(); i++) {
+				String sym = this.alphabet.getSymbol(i);
+				Integer t = states.get(s);
+				Word<String> word = access.get(s).append(sym);
+				if (!this.replay(word).equals(target.getOutput(t, sym))) {
+					return false;
+				}
+				String key = this.key();
+				if (!seen.containsKey(key)) {
+					if (seen.size() >= maxStates) return false;
+					seen.put(key, seen.size());
+				}
+				Integer succ = target.getSuccessor(t, sym);
+				if (succ == null) return false;
+				if (pairs.add(key + "#" + succ)) {
+					access.add(word);
+					states.add(succ);
+				}
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,69 @@
+package net.vwzq.polca;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import net.automatalib.automata.transducers.impl.compact.CompactMealy;
+import net.automatalib.words.Alphabet;
+
+// Identifies a learnt model (e.g. from hardware) within the age policy family:
+// every parameterisation of AgePolicy is explored in lockstep with the model,
+// in parallel, and the ones producing the same outputs are reported.
+class PolicySearch {
+
+	// policies growing beyond this are assumed to be different
+	private static final int STATE_FACTOR = 4;
+
+	public static List<AgePolicy.Params> identify(Config config, CompactMealy<String, String> target, int bits,
+			int threads) throws Exception {
+		Alphabet<String> alphabet = Polca.buildAlphabet(config.ways);
+		if (!new HashSet<String>(alphabet).equals(new HashSet<String>(target.getInputAlphabet()))) {
+			throw new Exception("model alphabet doesn't match " + config.ways + " ways");
+		}
+		List<AgePolicy.Params> candidates = AgePolicy.enumerate(bits);
+		int limit = STATE_FACTOR * target.size();
+		AtomicInteger done = new AtomicInteger();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			return pool.submit(() -> candidates.parallelStream().filter(p -> {
+				try {
+					PolicyExplorer explorer = new PolicyExplorer(new AgePolicy(config, p), config.ways, target.getInputAlphabet());
+					return explorer.matches(target, limit);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				} finally {
+					int n = done.incrementAndGet();
+					if (!config.silent && n % 1000 == 0) {
+						System.out.println(String.format("\t%d/%d candidates", n, candidates.size()));
+					}
+				}
+			}).collect(Collectors.toList())).get();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	public static void run(Config config, String path, int bits, int threads) throws Exception {
+		CompactMealy<String, String> target;
+		try {
+			target = ModelIO.read(path);
+		} catch (IOException e) {
+			throw new Exception(path + ": " + e.getMessage());
+		}
+		// ways follow from the model: h(0)..h(w-1) and m()
+		config.ways = target.getInputAlphabet().size() - 1;
+		long start = System.currentTimeMillis();
+		List<AgePolicy.Params> found = identify(config, target, bits, threads);
+		System.out.println(String.format("%d of %d age policies match %s (%d ways, %d states) in %.1fs", found.size(),
+				AgePolicy.enumerate(bits).size(), path, config.ways, target.size(),
+				(System.currentTimeMillis() - start) / 1000.0));
+		for (AgePolicy.Params p : found) {
+			System.out.println("  " + p);
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+package net.vwzq.polca;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Policy synthesized by Sketch (see scripts/sketch/output/), loaded with
+// -p sketch -sketch_policy <file>. The program is interpreted once to
+// tabulate every age vector reachable from s0 (defined in _main), so
+// accesses are plain table lookups afterwards.
+class SketchPolicy extends CachePolicy {
+
+	private static final int MAX_STATES = 1 << 20;
+
+	private final List<int[]> states = new ArrayList<int[]>();
+	private int[][] hitNext;
+	private int[] missNext;
+	private int[] missIdx;
+	private int current;
+
+	public SketchPolicy(Config config) throws Exception {
+		super (config);
+		if (config.sketch_policy == null) {
+			throw new Exception("no program for 'sketch' policy");
+		}
+		SketchProgram program = new SketchProgram(config.sketch_policy);
+		try {
+			this.build(program);
+		} catch (SketchProgram.SketchException e) {
+			throw new Exception(e.getMessage());
+		}
+		this.reset();
+	}
+
+	private void build(SketchProgram program) throws Exception {
+		// running _main also checks its assertions, i.e. the learnt constraints
+		SketchProgram.Ref s0 = program.run("_main").get("s0");
+		if (s0 == null || !(s0.value instanceof int[])) {
+			throw new Exception("no initial state 's0' in _main");
+		}
+		if (((int[]) s0.value).length != this.WAYS) {
+			throw new Exception("program has " + ((int[]) s0.value).length + " ways, expected " + this.WAYS);
+		}
+
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<int[]> hits = new ArrayList<int[]>();
+		List<Integer> misses = new ArrayList<Integer>();
+		List<Integer> victims = new ArrayList<Integer>();
+		Deque<Integer> queue = new ArrayDeque<Integer>();
+		this.intern((int[]) s0.value, ids, queue);
+		while (!queue.isEmpty()) {
+			int id = queue.poll();
+			int[] state = this.states.get(id);
+			int[] next = new int[this.WAYS];
+			for (int pos = 0; pos < this.WAYS; pos++) {
+				next[pos] = this.intern(vector(program.call("hitState", state, pos), "hitState"), ids, queue);
+			}
+			Object victim = program.call("missIdx", state);
+			if (!(victim instanceof Integer) || (Integer) victim < 0 || (Integer) victim >= this.WAYS) {
+				throw new Exception("missIdx" + Arrays.toString(state) + " = " + victim + " is not a way");
+			}
+			// tables are filled in order of ids
+			while (hits.size() <= id) {
+				hits.add(null);
+				misses.add(null);
+				victims.add(null);
+			}
+			hits.set(id, next);
+			victims.set(id, (Integer) victim);
+			misses.set(id, this.intern(vector(program.call("missState", state), "missState"), ids, queue));
+		}
+
+		int n = this.states.size();
+		this.hitNext = hits.toArray(new int[n][]);
+		this.missNext = new int[n];
+		this.missIdx = new int[n];
+		for (int i = 0; i < n; i++) {
+			this.missNext[i] = misses.get(i);
+			this.missIdx[i] = victims.get(i);
+		}
+	}
+
+	private int[] vector(Object value, String function) throws Exception {
+		if (!(value instanceof int[]) || ((int[]) value).length != this.WAYS) {
+			throw new Exception(function + " doesn't return " + this.WAYS + " ages");
+		}
+		return (int[]) value;
+	}
+
+	private int intern(int[] state, Map<String, Integer> ids, Deque<Integer> queue) throws Exception {
+		String key = Arrays.toString(state);
+		Integer id = ids.get(key);
+		if (id == null) {
+			if (this.states.size() >= MAX_STATES) {
+				throw new Exception("more than " + MAX_STATES + " reachable states, ages are not bounded?");
+			}
+			id = this.states.size();
+			this.states.add(state.clone());
+			ids.put(key, id);
+			queue.add(id);
+		}
+		return id;
+	}
+
+	public int size() {
+		return this.states.size();
+	}
+
+	private void sync() {
+		int[] ages = this.states.get(this.current);
+		for (int i=0; i < this.WAYS; i++) {
+			this.cache[i].state = ages[i];
+		}
+	}
+
+	public void reset() {
+		this.current = 0;
+		for (int i=0; i < this.WAYS; i++) {
+			this.cache[i] = new Line(this.alpha[i], 0);
+		}
+		this.sync();
+	}
+
+	protected int hit(String block) {
+		for (int i=0; i < this.WAYS; i++) {
+			if (this.cache[i].block.equals(block)) {
+				this.current = this.hitNext[this.current][i];
+				break;
+			}
+		}
+		this.sync();
+		return -1;
+	}
+
+	protected int miss(String block) {
+		int victim = this.missIdx[this.current];
+		this.cache[victim].block = block;
+		this.current = this.missNext[this.current];
+		this.sync();
+		return victim;
+	}
+
+}